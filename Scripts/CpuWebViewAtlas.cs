@@ -0,0 +1,124 @@
+﻿using System.Collections.Generic;
+using UnityEngine;
+
+// 複数の CpuWebViewTexture を1枚のテクスチャにまとめて取得する（webviewcpu.WebViewAtlas）
+// JNI 呼び出し・描画依頼・テクスチャ転送がパネルの数によらず1フレーム1回で済む
+// パネル側の atlas にこれを指定すると、パネルは自分では取得せず、ここが決めた区画を貼る
+public class CpuWebViewAtlas : MonoBehaviour
+{
+    const int TableInts = 5; // WebViewAtlas.TABLE_INTS：{x, y, frameWidth, frameHeight, 矩形数}
+
+    public int width = 2048;
+    public int height = 2048;
+    public int fps = 10;
+    public CpuWebViewTexture.OutputFormat format = CpuWebViewTexture.OutputFormat.RGBA32;
+
+    Texture2D tex;
+    byte[] buf; // 1回だけ確保して使い回す
+    int[] table = new int[0];
+    int[] dirtyRects = new int[0]; // {x, y, w, h} の並び（atlas 座標）
+    int bytesPerPixel = 4;
+    float nextPullTime;
+    readonly List<CpuWebViewTexture> panels = new List<CpuWebViewTexture>();
+
+#if UNITY_ANDROID && !UNITY_EDITOR
+    AndroidJavaObject atlas;
+#endif
+
+    void Awake()
+    {
+        var texFormat = TextureFormat.RGBA32;
+#if UNITY_ANDROID && !UNITY_EDITOR
+        atlas = new AndroidJavaObject("webviewcpu.WebViewAtlas", width, height, (int)format);
+        texFormat = (TextureFormat)System.Enum.Parse(typeof(TextureFormat), atlas.Call<string>("getOutputTextureFormat"));
+        bytesPerPixel = atlas.Call<int>("getOutputBytesPerPixel");
+#endif
+        tex = new Texture2D(width, height, texFormat, false);
+        tex.wrapMode = TextureWrapMode.Clamp;
+        tex.filterMode = FilterMode.Bilinear;
+        buf = new byte[width * height * bytesPerPixel];
+    }
+
+    // パネルの Start から。入りきらなければ false
+    public bool Add(CpuWebViewTexture panel)
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        if (atlas == null || panel.Bridge == null || !atlas.Call<bool>("add", panel.Bridge)) return false;
+        panels.Add(panel);
+        Resize();
+        return true;
+#else
+        return false;
+#endif
+    }
+
+    public void Remove(CpuWebViewTexture panel)
+    {
+        if (!panels.Remove(panel)) return;
+#if UNITY_ANDROID && !UNITY_EDITOR
+        if (atlas != null && panel.Bridge != null)
+            atlas.Call("remove", panel.Bridge);
+        Resize();
+#endif
+    }
+
+#if UNITY_ANDROID && !UNITY_EDITOR
+    // パネルの増減のときだけ取り直す
+    void Resize()
+    {
+        table = new int[panels.Count * TableInts];
+        dirtyRects = new int[atlas.Call<int>("getDirtyRectCapacity")];
+    }
+#endif
+
+    void Update()
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        if (atlas == null || panels.Count == 0 || Time.time < nextPullTime) return;
+        nextPullTime = Time.time + 1f / Mathf.Max(1, fps);
+
+        // 全パネル分を1回の呼び出しで（変化したタイルだけ buf に入る）
+        int n = atlas.Call<int>("captureDirtyInto", buf, table, dirtyRects);
+        if (n < 0)
+        {
+            Debug.LogWarning("[CpuWebViewAtlas] captureDirtyInto failed");
+            return;
+        }
+        if (n == 0) return; // 変化なし：転送もしない
+
+        var raw = tex.GetRawTextureData<byte>();
+        int bpp = bytesPerPixel;
+        int stride = width * bpp;
+        for (int r = 0; r < n; r++)
+        {
+            int x = dirtyRects[r * 4];
+            int y = dirtyRects[r * 4 + 1];
+            int w = dirtyRects[r * 4 + 2];
+            int h = dirtyRects[r * 4 + 3];
+            for (int row = y; row < y + h; row++)
+            {
+                int o = row * stride + x * bpp;
+                Unity.Collections.NativeArray<byte>.Copy(buf, o, raw, o, w * bpp);
+            }
+        }
+        tex.Apply(false, false);
+
+        for (int i = 0; i < panels.Count; i++)
+        {
+            int t = i * TableInts;
+            if (table[t + 4] > 0)
+                panels[i].ShowAtlasRegion(tex, table[t], table[t + 1], table[t + 2], table[t + 3]);
+        }
+#endif
+    }
+
+    void OnDestroy()
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        atlas?.Dispose();
+        atlas = null;
+#endif
+        if (tex != null) { Destroy(tex); tex = null; }
+        buf = null;
+    }
+}
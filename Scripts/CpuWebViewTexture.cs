@@ -2,20 +2,86 @@
 
 public class CpuWebViewTexture : MonoBehaviour
 {
+    // WebViewCpuBridge.setOutputFormat の値と同じ並び
+    public enum OutputFormat { RGBA32 = 0, RGB565 = 1, RGB24 = 2, R8 = 3 }
+
     [Header("Render")]
     public Renderer targetRenderer;
     public int width = 1024;
     public int height = 1024;
     public int fps = 10;
+    public bool adaptive = true; // 変化が無いページは取得間隔を伸ばす（最短は 1/fps）
+    public int idleIntervalMs = 1000;
     public string startUrl = "https://www.google.com";
 
+    [Header("Capture")]
+    public bool dirtyTiles = true; // 変化したタイルだけ変換・転送する
+    public bool directBuffer = false; // テクスチャのメモリへ直接コピー（Unity 2022.2+、dirtyTilesより優先）
+    public bool sharedFrames = false; // 毎フレームの JNI 呼び出し無し：ブリッジが共有メモリへ書き、ここはメモリを見るだけ（最優先）
+    public OutputFormat format = OutputFormat.RGBA32; // RGB565 で転送量半分、R8 は文字を読むだけのパネル向け
+    public bool dynamicResolution = false; // 重いページは描く解像度を自動で下げる（UV で左上だけ貼る）
+    [Range(0.25f, 1f)] public float minRenderScale = 0.5f;
+    public int renderBudgetMs = 0; // 描画＋変換の予算（0 = 1/fps）
+    public bool offMainRaster = false; // UI スレッドでは記録だけ、ラスタは別スレッド（入力が詰まりにくい）
+    public bool scrollShift = false; // スクロール中は前のフレームをずらして、出てきた帯だけ描く・変換する（固定ヘッダのあるページは不可）
+    public CpuWebViewAtlas atlas; // 指定すると自分では取得せず、atlas のテクスチャの区画を貼る（入りきらなければ自分で取得）
+
+    [Header("Network")]
+    public int resourceCacheMB = 0; // >0 で CSS・JS・画像・フォントを端末に持つ（再訪問・他のパネルでも使う）
+    public string resourceCacheHosts = ""; // カンマ区切り（"example.com" は サブドメインにも当たる）。空 = すべて
+
+    [Header("Debug")]
+    public int metricsLogIntervalMs = 0; // >0 で段ごとの所要時間を logcat（WVCPU_IMPORTANT）へ出す
+
     Texture2D tex;
     byte[] rgbaBuf; // ★追加：Unity側で1回だけ確保して使い回す
+    int[] dirtyRects; // {x, y, w, h} の並び
+    long lastFrameId;
+    float nextPullTime;
+    bool rendererVisible = true; // 見えていない間は取得しない（ブリッジ側で凍結対象になる）
+    bool gotNewFrame; // 直近の PullFrame で新フレームを受け取ったか
+    volatile bool bridgeReady; // ブリッジの WebView ができた（Android の main looper から立てる）
+    int bytesPerPixel = 4;
+    TextureFormat texFormat = TextureFormat.RGBA32;
+    Material mat;
+    int frameWidth, frameHeight; // テクスチャのうちフレームが入っている左上の大きさ
 
 #if UNITY_ANDROID && !UNITY_EDITOR
     AndroidJavaObject bridge;
+
+    internal AndroidJavaObject Bridge => bridge;
+
+    // webviewcpu.SharedFrameBuffer のヘッダ（seqlock。SEQ が奇数なら書いている途中）
+    const int SharedHeaderBytes = 64;
+    const int SharedSeq = 4, SharedFrameW = 20, SharedFrameH = 24;
+    const int SharedDirtyX = 28, SharedDirtyY = 32, SharedDirtyW = 36, SharedDirtyH = 40;
+    AndroidJavaObject sharedBuffer;
+    System.IntPtr sharedPtr;
+    int lastSharedSeq;
+
+    int SharedInt(int offset) => System.Runtime.InteropServices.Marshal.ReadInt32(sharedPtr, offset);
+
+    class ReadyListener : AndroidJavaProxy
+    {
+        readonly CpuWebViewTexture owner;
+        public ReadyListener(CpuWebViewTexture owner) : base("webviewcpu.WebViewCpuBridge$ReadyListener") { this.owner = owner; }
+        void onReady() { owner.bridgeReady = true; }
+    }
 #endif
 
+    // アプリ起動直後に呼んでおくと、最初のパネルを開いたときに WebView 生成・Bitmap 確保を待たずに済む
+    public static void Prewarm(int width, int height)
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        var unityPlayer = new AndroidJavaClass("com.unity3d.player.UnityPlayer");
+        var activity = unityPlayer.GetStatic<AndroidJavaObject>("currentActivity");
+        using (var cls = new AndroidJavaClass("webviewcpu.WebViewCpuBridge"))
+            cls.CallStatic("prewarm", activity, width, height);
+#endif
+    }
+
+    public bool IsReady => bridgeReady;
+
     void Awake()
     {
         if (targetRenderer == null) targetRenderer = GetComponent<Renderer>();
@@ -26,32 +92,116 @@ public class CpuWebViewTexture : MonoBehaviour
             return;
         }
 
-        tex = new Texture2D(width, height, TextureFormat.RGBA32, false);
+#if UNITY_ANDROID && !UNITY_EDITOR
+        var unityPlayer = new AndroidJavaClass("com.unity3d.player.UnityPlayer");
+        var activity = unityPlayer.GetStatic<AndroidJavaObject>("currentActivity");
+        bridge = new AndroidJavaObject("webviewcpu.WebViewCpuBridge", activity, width, height);
+        bridge.Call("setReadyListener", new ReadyListener(this));
+        bridge.Call("setAdaptiveRange", 1000 / Mathf.Max(1, fps), idleIntervalMs);
+        if (metricsLogIntervalMs > 0)
+            bridge.Call("setMetricsLogIntervalMs", (long)metricsLogIntervalMs);
+
+        // ブリッジが決めた形式に合わせてテクスチャを作る（対応していなければ RGBA32 のまま）
+        if (bridge.Call<bool>("setOutputFormat", (int)format))
+        {
+            texFormat = (TextureFormat)System.Enum.Parse(typeof(TextureFormat), bridge.Call<string>("getOutputTextureFormat"));
+            bytesPerPixel = bridge.Call<int>("getOutputBytesPerPixel");
+        }
+        if (directBuffer && (format == OutputFormat.RGB24 || format == OutputFormat.R8))
+            directBuffer = false; // Bitmap の並びと違うので直接コピーはできない
+        if (dynamicResolution)
+            bridge.Call("setDynamicResolution", true, minRenderScale, 1f, renderBudgetMs);
+        if (offMainRaster)
+            bridge.Call("setOffMainRaster", true);
+        if (scrollShift)
+            bridge.Call("setScrollShift", true);
+        if (resourceCacheMB > 0)
+            bridge.Call<bool>("setResourceCache", "", resourceCacheMB * 1024L * 1024L, resourceCacheHosts, "");
+        if (sharedFrames && atlas == null)
+        {
+            // 形式はここで決まる（以降 setOutputFormat は効かない）
+            sharedBuffer = bridge.Call<AndroidJavaObject>("startSharedFrames");
+            sharedPtr = AndroidJNI.GetDirectBufferAddress(sharedBuffer.GetRawObject());
+        }
+#endif
+
+        mat = targetRenderer.material;
+        if (atlas == null)
+            CreateTexture();
+    }
+
+    void CreateTexture()
+    {
+        tex = new Texture2D(width, height, texFormat, false);
         tex.wrapMode = TextureWrapMode.Clamp;
         tex.filterMode = FilterMode.Bilinear;
 
         // ★追加：使い回しバッファ（1回だけ）
-        rgbaBuf = new byte[width * height * 4];
+        rgbaBuf = new byte[width * height * bytesPerPixel];
 
-        var mat = targetRenderer.material;
         mat.mainTexture = tex;
-        mat.mainTextureScale = new Vector2(1f, -1f);
-        mat.mainTextureOffset = new Vector2(0f, 1f);
+        SetFrameSize(width, height);
+    }
 
-#if UNITY_ANDROID && !UNITY_EDITOR
-        var unityPlayer = new AndroidJavaClass("com.unity3d.player.UnityPlayer");
-        var activity = unityPlayer.GetStatic<AndroidJavaObject>("currentActivity");
-        bridge = new AndroidJavaObject("webviewcpu.WebViewCpuBridge", activity, width, height);
-#endif
+    // atlas から：atlas のテクスチャの (x, y) から fw x fh を上下反転して貼る
+    internal void ShowAtlasRegion(Texture2D atlasTex, int x, int y, int fw, int fh)
+    {
+        float aw = atlasTex.width, ah = atlasTex.height;
+        if (mat.mainTexture != atlasTex)
+            mat.mainTexture = atlasTex;
+        mat.mainTextureScale = new Vector2(fw / aw, -fh / ah);
+        mat.mainTextureOffset = new Vector2(x / aw, (y + fh) / ah);
+    }
+
+    // テクスチャの左上 fw x fh だけを上下反転して貼る
+    void SetFrameSize(int fw, int fh)
+    {
+        frameWidth = fw;
+        frameHeight = fh;
+        float sx = (float)fw / width, sy = (float)fh / height;
+        mat.mainTextureScale = new Vector2(sx, -sy);
+        mat.mainTextureOffset = new Vector2(0f, sy);
     }
 
     void Start()
     {
+        // 全パネルの Awake の後なので、atlas 側の準備もできている
+        if (atlas != null && !atlas.Add(this))
+        {
+            atlas = null;
+            CreateTexture();
+        }
 #if UNITY_ANDROID && !UNITY_EDITOR
+        // 準備前でもブリッジ側で貯めて、WebView ができたら順に流す
         if (!string.IsNullOrEmpty(startUrl))
             bridge?.Call("loadUrl", startUrl);
+#endif
+    }
 
-        InvokeRepeating(nameof(PullFrame), 1.5f, 1f / Mathf.Max(1, fps));
+    void Update()
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        if (bridge == null || atlas != null || !bridgeReady || !rendererVisible) return;
+        if (sharedPtr != System.IntPtr.Zero)
+        {
+            PullSharedFrame(); // メモリを見るだけなので毎フレーム
+            return;
+        }
+        if (Time.time < nextPullTime) return;
+
+        gotNewFrame = false;
+        PullFrame();
+        if (gotNewFrame && dynamicResolution)
+        {
+            int fw = bridge.Call<int>("getFrameWidth"), fh = bridge.Call<int>("getFrameHeight");
+            if (fw != frameWidth || fh != frameHeight)
+                SetFrameSize(fw, fh);
+        }
+
+        float interval = 1f / Mathf.Max(1, fps);
+        if (adaptive && !gotNewFrame)
+            interval = bridge.Call<int>("getSuggestedIntervalMs") / 1000f;
+        nextPullTime = Time.time + interval;
 #endif
     }
 
@@ -60,26 +210,168 @@ public class CpuWebViewTexture : MonoBehaviour
 #if UNITY_ANDROID && !UNITY_EDITOR
         if (bridge == null || tex == null || rgbaBuf == null) return;
 
+        if (directBuffer)
+        {
+            PullDirectFrame();
+            return;
+        }
+
+        if (dirtyTiles)
+        {
+            PullDirtyFrame();
+            return;
+        }
+
         // ★変更：戻り値 byte[] ではなく、Unityの配列に書き込ませる
-        bool ok = bridge.Call<bool>("captureInto", rgbaBuf);
-        if (!ok)
+        // 待たずに完成済みの最新フレームだけ受け取る（0 = 新フレームなし）
+        long frameId = bridge.Call<long>("captureLatestInto", rgbaBuf);
+        if (frameId < 0)
         {
-            Debug.LogWarning("[WebViewCapture] captureInto failed");
+            Debug.LogWarning("[WebViewCapture] captureLatestInto failed");
             return;
         }
+        if (frameId == 0 || frameId == lastFrameId) return;
+        lastFrameId = frameId;
+        gotNewFrame = true;
 
         tex.LoadRawTextureData(rgbaBuf);
         tex.Apply(false, false);
 #endif
     }
 
+#if UNITY_ANDROID && !UNITY_EDITOR
+    void PullDirectFrame()
+    {
+        // Java側が tex の CPU 側メモリへ直接書く（byte[] の往復コピー無し。RGBA32 / RGB565 のみ）
+        // 生データのアドレスは Apply やテクスチャの作り直しで変わりうるので、包む direct ByteBuffer は毎回作る
+        // （Java 側は呼び出しの中で書き終わり、持ち続けない）
+        long frameId;
+        using (var texBuffer = AndroidJNI.NewDirectByteBuffer(tex.GetRawTextureData<byte>()))
+            frameId = bridge.Call<long>("captureLatestIntoBuffer", texBuffer);
+        if (frameId < 0)
+        {
+            Debug.LogWarning("[WebViewCapture] captureLatestIntoBuffer failed");
+            return;
+        }
+        if (frameId == 0 || frameId == lastFrameId) return;
+        lastFrameId = frameId;
+        gotNewFrame = true;
+
+        tex.Apply(false, false);
+    }
+
+    void PullSharedFrame()
+    {
+        if (tex == null || rgbaBuf == null) return;
+        int seq = SharedInt(SharedSeq);
+        System.Threading.Thread.MemoryBarrier();
+        if ((seq & 1) != 0 || seq == lastSharedSeq) return;
+
+        // 前回の次の番なら変わった範囲だけ、飛んでいたら全面を写す
+        bool partial = lastSharedSeq != 0 && seq == lastSharedSeq + 2;
+        int bpp = bytesPerPixel;
+        int stride = width * bpp;
+        int x = 0, y = 0, w = width, h = height;
+        if (partial)
+        {
+            x = SharedInt(SharedDirtyX);
+            y = SharedInt(SharedDirtyY);
+            w = SharedInt(SharedDirtyW);
+            h = SharedInt(SharedDirtyH);
+        }
+        int fw = SharedInt(SharedFrameW), fh = SharedInt(SharedFrameH);
+        var body = sharedPtr + SharedHeaderBytes;
+        for (int row = y; row < y + h; row++)
+        {
+            int o = row * stride + x * bpp;
+            System.Runtime.InteropServices.Marshal.Copy(body + o, rgbaBuf, o, w * bpp);
+        }
+        System.Threading.Thread.MemoryBarrier();
+        if (SharedInt(SharedSeq) != seq)
+        {
+            lastSharedSeq = 0; // 写している間に書き換わった：rgbaBuf は当てにならないので次は全面
+            return;
+        }
+        lastSharedSeq = seq;
+        gotNewFrame = true;
+
+        if (partial)
+        {
+            var raw = tex.GetRawTextureData<byte>();
+            for (int row = y; row < y + h; row++)
+            {
+                int o = row * stride + x * bpp;
+                Unity.Collections.NativeArray<byte>.Copy(rgbaBuf, o, raw, o, w * bpp);
+            }
+        }
+        else
+        {
+            tex.LoadRawTextureData(rgbaBuf);
+        }
+        tex.Apply(false, false);
+        if (fw != frameWidth || fh != frameHeight)
+            SetFrameSize(fw, fh);
+    }
+
+    void PullDirtyFrame()
+    {
+        // 使うときだけ（direct buffer・共有フレームの経路では要らない）
+        if (dirtyRects == null)
+            dirtyRects = new int[bridge.Call<int>("getDirtyRectCapacity")];
+        int n = bridge.Call<int>("captureDirtyInto", rgbaBuf, dirtyRects);
+        if (n < 0)
+        {
+            Debug.LogWarning("[WebViewCapture] captureDirtyInto failed");
+            return;
+        }
+        if (n == 0) return; // 変化なし：転送もしない
+        gotNewFrame = true;
 
+        // 変化した矩形の行だけテクスチャの生データへコピー
+        var raw = tex.GetRawTextureData<byte>();
+        int bpp = bytesPerPixel;
+        int stride = width * bpp;
+        for (int r = 0; r < n; r++)
+        {
+            int x = dirtyRects[r * 4];
+            int y = dirtyRects[r * 4 + 1];
+            int w = dirtyRects[r * 4 + 2];
+            int h = dirtyRects[r * 4 + 3];
+            for (int row = y; row < y + h; row++)
+            {
+                int o = row * stride + x * bpp;
+                Unity.Collections.NativeArray<byte>.Copy(rgbaBuf, o, raw, o, w * bpp);
+            }
+        }
+        tex.Apply(false, false);
+    }
+#endif
+
+    void OnBecameVisible()
+    {
+        rendererVisible = true;
+#if UNITY_ANDROID && !UNITY_EDITOR
+        bridge?.Call("setVisible", true);
+#endif
+    }
+
+    void OnBecameInvisible()
+    {
+        rendererVisible = false;
+#if UNITY_ANDROID && !UNITY_EDITOR
+        bridge?.Call("setVisible", false);
+#endif
+    }
 
     void OnDestroy()
     {
+        if (atlas != null) { atlas.Remove(this); atlas = null; }
 #if UNITY_ANDROID && !UNITY_EDITOR
         try { bridge?.Call("dispose"); } catch { }
         bridge = null;
+        sharedBuffer?.Dispose();
+        sharedBuffer = null;
+        sharedPtr = System.IntPtr.Zero;
 #endif
         if (tex != null) { Destroy(tex); tex = null; }
         rgbaBuf = null;
@@ -92,6 +384,20 @@ public class CpuWebViewTexture : MonoBehaviour
 #endif
     }
 
+    public void GoBack()
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        bridge?.Call("goBack");
+#endif
+    }
+
+    public void GoForward()
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        bridge?.Call("goForward");
+#endif
+    }
+
     public void TapPixel(float x, float y)
     {
 #if UNITY_ANDROID && !UNITY_EDITOR
@@ -99,6 +405,74 @@ public class CpuWebViewTexture : MonoBehaviour
 #endif
     }
 
+    // ドラッグ・スクロール・マルチタッチ用（id はコントローラごとに固定）。毎フレーム呼んでよい
+    public void PointerDown(int id, float x, float y)
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        bridge?.Call("pointerDown", id, x, y);
+#endif
+    }
+
+    public void PointerMove(int id, float x, float y)
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        bridge?.Call("pointerMove", id, x, y);
+#endif
+    }
+
+    public void PointerUp(int id, float x, float y)
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        bridge?.Call("pointerUp", id, x, y);
+#endif
+    }
+
+    public void PointerCancel()
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        bridge?.Call("pointerCancel");
+#endif
+    }
+
+    // 並びは WebViewCpuBridge.getMetricsSnapshot のコメント参照（長さは getMetricsLength）
+    public int ReadMetrics(long[] dst)
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        if (bridge != null && dst != null)
+            return bridge.Call<int>("getMetricsSnapshot", dst);
+#endif
+        return 0;
+    }
+
+    // フレームと入力をファイルに記録する（例：Application.persistentDataPath + "/rec.xrbr"）
+    // PC では Tools~ の webviewcpu.FrameReplayer で読み戻して計測できる
+    public bool StartRecording(string path)
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        if (bridge != null)
+            return bridge.Call<bool>("startRecording", path);
+#endif
+        return false;
+    }
+
+    public long StopRecording()
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        if (bridge != null)
+            return bridge.Call<long>("stopRecording");
+#endif
+        return 0;
+    }
+
+    public string GetMetricsSummary()
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        return bridge?.Call<string>("getMetricsSummary");
+#else
+        return null;
+#endif
+    }
+
     public void SetFocusedInputValue(string s)
     {
 #if UNITY_ANDROID && !UNITY_EDITOR
@@ -106,6 +480,24 @@ public class CpuWebViewTexture : MonoBehaviour
 #endif
     }
 
+    // [start, start+deleteCount) を text に置き換える（差分同期）。expectedLength は置き換え前の長さ（違えばページ側で無視）
+    public void SpliceFocusedInput(int start, int deleteCount, string text, int expectedLength)
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        bridge?.Call("spliceFocusedInput", start, deleteCount, text, expectedLength);
+#endif
+    }
+
+    // ページ側で無視された SpliceFocusedInput の累計（増えたら SetFocusedInputValue で全文を送り直す）
+    public long GetSpliceRejectCount()
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        if (bridge != null)
+            return bridge.Call<long>("getSpliceRejectCount");
+#endif
+        return 0;
+    }
+
     public void Backspace()
     {
 #if UNITY_ANDROID && !UNITY_EDITOR
@@ -8,13 +8,30 @@ public class XriKeyboardToWebBridge : MonoBehaviour
 
     public float sendInterval = 0.08f; // 80ms
     float t;
-    string last = "";
+    string last; // 直近に送った値（null = 次は全文を送る）
+    long rejects; // 前回見た web.GetSpliceRejectCount()
 
     void Reset()
     {
         input = GetComponent<TMP_InputField>();
     }
 
+    void OnEnable()
+    {
+        if (input) input.onSelect.AddListener(OnSelect);
+    }
+
+    void OnDisable()
+    {
+        if (input) input.onSelect.RemoveListener(OnSelect);
+    }
+
+    // 入力欄を選び直したら、ページ側の値とずれていても戻せるよう全文から送り直す
+    void OnSelect(string _)
+    {
+        last = null;
+    }
+
     void Update()
     {
         if (!input || !web) return;
@@ -23,10 +40,45 @@ public class XriKeyboardToWebBridge : MonoBehaviour
         if (t < sendInterval) return;
         t = 0f;
 
+        // ページ側の値が変わっていて差分が捨てられたら、全文から送り直す
+        long r = web.GetSpliceRejectCount();
+        if (r != rejects)
+        {
+            rejects = r;
+            last = null;
+        }
+
         var cur = input.text ?? "";
         if (cur == last) return;
 
-        web.SetFocusedInputValue(cur);
+        if (last == null)
+        {
+            web.SetFocusedInputValue(cur);
+        }
+        else
+        {
+            // 変わった部分だけ送る（長い文章でも送る量は編集の大きさぶん）
+            Diff(last, cur, out int start, out int deleteCount, out string text);
+            web.SpliceFocusedInput(start, deleteCount, text, last.Length);
+        }
         last = cur;
     }
+
+    // a → b を、共通の先頭・末尾を除いた1か所の置き換え [start, start+deleteCount) → text にする
+    // サロゲートペアの途中では切らない
+    static void Diff(string a, string b, out int start, out int deleteCount, out string text)
+    {
+        int max = Mathf.Min(a.Length, b.Length);
+        int p = 0;
+        while (p < max && a[p] == b[p]) p++;
+        if (p > 0 && char.IsHighSurrogate(a[p - 1])) p--;
+
+        int s = 0;
+        while (s < max - p && a[a.Length - 1 - s] == b[b.Length - 1 - s]) s++;
+        if (s > 0 && char.IsLowSurrogate(a[a.Length - s])) s--;
+
+        start = p;
+        deleteCount = a.Length - p - s;
+        text = b.Substring(p, b.Length - p - s);
+    }
 }
@@ -0,0 +1,29 @@
+package webviewcpu;
+
+import java.lang.management.ManagementFactory;
+
+// 計測用：今のスレッドが new したバイト数（HotSpot の com.sun.management.ThreadMXBean、取れなければ -1）
+// 呼び出し自体は new しないので、短い区間の差をそのまま B/op にできる
+final class Allocations {
+    private static final com.sun.management.ThreadMXBean BEAN = bean();
+
+    private Allocations() {
+    }
+
+    static long threadBytes() {
+        return BEAN != null ? BEAN.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    private static com.sun.management.ThreadMXBean bean() {
+        try {
+            com.sun.management.ThreadMXBean bean =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (!bean.isThreadAllocatedMemorySupported())
+                return null;
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        } catch (RuntimeException | LinkageError e) {
+            return null;
+        }
+    }
+}
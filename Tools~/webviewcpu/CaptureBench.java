@@ -0,0 +1,201 @@
+package webviewcpu;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+// webviewcpu の純 Java 部分のマイクロベンチ（Android非依存）
+//   convert : ARGB → 出力形式（512 / 1024 / 2048、StripedConverter と1スレッドの両方）
+//   capture : FramePipeline の capture 1回あたりの時間と new のバイト数（JMH の gc.alloc.rate.norm 相当）
+//   js      : JsCommandQueue の命令列の組み立て（insertText / enter / splice → drainScript）と WebJs.quoteInto
+//   diff    : DirtyTileTracker.diff と FrameCodec の RLE
+// 各項目はウォームアップの後に時間を区切って回し、1回あたりの時間と B/op を出す
+// capture の B/op が測り直しても 1 以上なら FAILED（定常状態のフレーム経路は new しない約束）
+//   java -cp <classes> webviewcpu.CaptureBench [seconds-per-case]
+final class CaptureBench {
+    private static final int[] SIZES = {512, 1024, 2048};
+
+    private interface Op {
+        void run();
+    }
+
+    private static double seconds = 1.0;
+    private static boolean ok = true;
+
+    public static void main(String[] args) {
+        if (args.length > 0)
+            seconds = Double.parseDouble(args[0]);
+        final StripedConverter converter = StripedConverter.shared();
+        System.out.println("threads=" + converter.parallelism() + " seconds/case=" + seconds
+                + " (B/op: " + (Allocations.threadBytes() >= 0 ? "ThreadMXBean" : "n/a") + ")");
+
+        for (int size : SIZES)
+            benchConvert(converter, size);
+        for (int size : SIZES)
+            benchCapture(converter, size);
+        benchJs();
+        benchDiff(1024);
+
+        converter.shutdown();
+        System.out.println(ok ? "OK" : "FAILED");
+        if (!ok)
+            System.exit(1);
+    }
+
+    // -------------------------
+    // convert
+    // -------------------------
+
+    private static void benchConvert(StripedConverter converter, int size) {
+        final int[] src = new int[size * size];
+        final Random r = new Random(size);
+        for (int i = 0; i < src.length; i++)
+            src[i] = r.nextInt();
+        final byte[] dst = new byte[size * size * 4];
+        final StripedConverter.ArgbConvert task = new StripedConverter.ArgbConvert();
+        final long px = (long) size * size;
+
+        measure("convert " + size + " RGBA32 1-thread", px,
+                () -> StripedConverter.argbToRgba(src, 0, size, dst, 0, size, size, size));
+        for (int fmt = 0; fmt < 4; fmt++) {
+            final int f = fmt;
+            measure("convert " + size + " " + OutputFormat.textureFormat(f) + " striped", px,
+                    () -> converter.run(task.set(f, src, dst, size, 0, 0, size), size, size));
+        }
+    }
+
+    // -------------------------
+    // capture（SyntheticFrameSource は毎回1フレーム進むので、差分タイルは帯と点滅ブロックだけが変わる）
+    // -------------------------
+
+    private static void benchCapture(StripedConverter converter, int size) {
+        final CaptureMetrics metrics = new CaptureMetrics();
+        final FramePipeline pipeline = new FramePipeline(new SyntheticFrameSource(size, size), converter, metrics);
+        final byte[] out = new byte[size * size * 4];
+        final byte[] dirtyOut = new byte[size * size * 4];
+        final int[] rects = new int[pipeline.dirtyRectCapacity()];
+        final long px = (long) size * size;
+
+        requireNoAlloc("capture " + size + " captureLatestInto", px, () -> pipeline.captureLatestInto(out));
+        requireNoAlloc("capture " + size + " captureDirtyInto", px, () -> pipeline.captureDirtyInto(dirtyOut, rects));
+    }
+
+    // 区間の途中でコンパイルが切り替わると、消えていた new が1回だけ戻ってくる（deopt）ことがある
+    // 1回きりのものは op が多い区間では消えるので、B/op が 1 以上なら ALLOC_TRIES 回まで測り直して一番少ないものを見る
+    private static final int ALLOC_TRIES = 3;
+
+    private static void requireNoAlloc(String name, long units, Op op) {
+        double bytesPerOp = measure(name, units, op);
+        for (int i = 1; i < ALLOC_TRIES && bytesPerOp >= 1; i++)
+            bytesPerOp = Math.min(bytesPerOp, measure(name + " (again)", units, op));
+        if (bytesPerOp >= 1) {
+            System.out.println("FAIL: capture path allocates " + Math.round(bytesPerOp) + "B/op");
+            ok = false;
+        }
+    }
+
+    // -------------------------
+    // js（1フレーム分の編集をまとめた1本のスクリプトを作るまで）
+    // -------------------------
+
+    private static void benchJs() {
+        final JsCommandQueue q = new JsCommandQueue();
+        measure("js insertText x8 + enter", 0, () -> {
+            for (int i = 0; i < 8; i++)
+                q.add(JsCommandQueue.INSERT, "a");
+            q.add(JsCommandQueue.ENTER, null);
+            q.drainScript();
+        });
+        measure("js splice x4 (typing)", 0, () -> {
+            for (int i = 0; i < 4; i++)
+                q.addSplice(100 + i, 0, "x", 1000 + i);
+            q.drainScript();
+        });
+
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 200; i++)
+            value.append("line ").append(i).append(" \"quoted\" \\ あ\n");
+        final String longValue = value.toString();
+        measure("js setValue " + longValue.length() + " chars", longValue.length(), () -> {
+            q.add(JsCommandQueue.SET_VALUE, longValue);
+            q.drainScript();
+        });
+        final StringBuilder sb = new StringBuilder(longValue.length() * 2);
+        measure("js quoteInto " + longValue.length() + " chars", longValue.length(), () -> {
+            sb.setLength(0);
+            WebJs.quoteInto(sb, longValue);
+        });
+    }
+
+    // -------------------------
+    // diff / codec
+    // -------------------------
+
+    private static void benchDiff(int size) {
+        final SyntheticFrameSource source = new SyntheticFrameSource(size, size);
+        final int[] a = new int[size * size], b = new int[size * size];
+        source.acquire();
+        source.read(a);
+        source.acquire();
+        source.read(b);
+        final DirtyTileTracker tiles = new DirtyTileTracker(size, size, DirtyTileTracker.DEFAULT_TILE_SIZE);
+        final int[] rects = new int[tiles.maxRectInts()];
+        final int[] flip = {0};
+        final long px = (long) size * size;
+        measure("diff " + size + " DirtyTileTracker", px,
+                () -> tiles.diff((flip[0]++ & 1) == 0 ? a : b, rects));
+
+        final ByteBuffer raw = ByteBuffer.allocateDirect(size * size * 4).order(ByteOrder.nativeOrder());
+        raw.asIntBuffer().put(a);
+        final ByteBuffer enc = ByteBuffer.allocateDirect(FrameCodec.maxEncodedBytes(size, size))
+                .order(ByteOrder.nativeOrder());
+        measure("codec " + size + " FrameCodec.encode", px, () -> FrameCodec.encode(raw, size, size, enc));
+        final ByteBuffer delta = ByteBuffer.allocateDirect(FrameCodec.maxDeltaBytes(size * size))
+                .order(ByteOrder.nativeOrder());
+        measure("codec " + size + " FrameCodec.encodeXor", px,
+                () -> FrameCodec.encodeXor(b, a, a.length, delta, 0));
+    }
+
+    // -------------------------
+    // 計測（ウォームアップ → seconds の間回す）。戻り値は B/op（取れなければ -1）
+    // units > 0 なら 1回あたりの量（ピクセル・文字）から毎秒の処理量も出す
+    // -------------------------
+
+    private static double measure(String name, long units, Op op) {
+        run(op, seconds / 2);
+        final long alloc0 = Allocations.threadBytes();
+        final long t0 = System.nanoTime();
+        final long ops = run(op, seconds);
+        final long nanos = System.nanoTime() - t0;
+        final long alloc1 = Allocations.threadBytes();
+
+        final double nsPerOp = (double) nanos / ops;
+        final double bytesPerOp = alloc0 >= 0 && alloc1 >= 0
+                ? (double) (alloc1 - alloc0) / ops : -1;
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-40s %10.1f us/op %12.0f ops/s", name, nsPerOp / 1000, 1e9 / nsPerOp));
+        if (units > 0)
+            sb.append(String.format(" %9.1f M/s", units * 1e3 / nsPerOp));
+        sb.append(bytesPerOp >= 0 ? String.format(" %10.1f B/op", bytesPerOp) : "        n/a B/op");
+        System.out.println(sb);
+        return bytesPerOp;
+    }
+
+    // 時刻の確認は 1ms 程度ごと（短い op で nanoTime が効かないように）
+    private static long run(Op op, double secs) {
+        final long end = System.nanoTime() + (long) (secs * 1e9);
+        long ops = 0;
+        int batch = 1;
+        while (true) {
+            final long t = System.nanoTime();
+            for (int i = 0; i < batch; i++)
+                op.run();
+            ops += batch;
+            final long now = System.nanoTime();
+            if (now >= end)
+                return ops;
+            if (now - t < 1_000_000 && batch < (1 << 20))
+                batch <<= 1;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package webviewcpu;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// FrameRecorder のファイルを memory-mapped で読み戻す（Android非依存）
+// FrameSource として FramePipeline に繋げば、端末で録ったページの内容を
+// ブリッジと同じ変換・差分タイルの経路で Linux の JVM 上で計測できる
+//   java -cp <classes> webviewcpu.FrameReplayer rec.xrbr [loops]
+final class FrameReplayer implements FrameSource {
+    private final MappedByteBuffer map;
+    private final int width, height;
+    private final int[] frame; // 直近のフレーム（ARGB）。delta を重ねていく
+
+    // 直近の next() で読んだ記録
+    private long nanos;
+    private long frameId;
+    private int kind, a;
+    private float x, y;
+    private String text;
+
+    FrameReplayer(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel ch = raf.getChannel()) {
+            if (ch.size() > Integer.MAX_VALUE)
+                throw new IOException("recording too large: " + ch.size());
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        if (map.limit() < FrameRecorder.HEADER_BYTES || map.getInt(0) != FrameRecorder.MAGIC)
+            throw new IOException("not a recording: " + file);
+        if (map.getInt(4) != FrameRecorder.VERSION)
+            throw new IOException("unsupported version: " + map.getInt(4));
+        width = map.getInt(8);
+        height = map.getInt(12);
+        frame = new int[width * height];
+        rewind();
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+
+    void rewind() {
+        map.position(FrameRecorder.HEADER_BYTES);
+        Arrays.fill(frame, 0);
+        frameId = 0;
+    }
+
+    // 次の記録へ進む。戻り値：REC_FRAME / REC_INPUT / 0（終わり・壊れている）
+    int next() throws IOException {
+        if (map.remaining() < 1 + 8)
+            return 0;
+        final byte type = map.get();
+        nanos = map.getLong();
+        if (type == FrameRecorder.REC_FRAME) {
+            if (map.remaining() < 12)
+                return 0;
+            frameId = map.getLong();
+            final int len = map.getInt();
+            if (len < 0 || len > map.remaining())
+                return 0;
+            final int off = map.position();
+            if (!FrameCodec.decodeXor(map, off, len, frame, frame.length))
+                throw new IOException("broken frame " + frameId);
+            map.position(off + len);
+            return type;
+        }
+        if (type == FrameRecorder.REC_INPUT) {
+            if (map.remaining() < 20)
+                return 0;
+            kind = map.getInt();
+            a = map.getInt();
+            x = map.getFloat();
+            y = map.getFloat();
+            final int textLen = map.getInt();
+            text = null;
+            if (textLen >= 0) {
+                if (textLen > map.remaining())
+                    return 0;
+                byte[] b = new byte[textLen];
+                map.get(b);
+                text = new String(b, StandardCharsets.UTF_8);
+            }
+            return type;
+        }
+        return 0;
+    }
+
+    // 次のフレームまで進める（入力は読み飛ばす）。終わりなら false
+    boolean nextFrame() throws IOException {
+        int t;
+        while ((t = next()) != 0) {
+            if (t == FrameRecorder.REC_FRAME)
+                return true;
+        }
+        return false;
+    }
+
+    long nanos() {
+        return nanos;
+    }
+
+    // -------------------------
+    // FrameSource（記録の終わりに来たら、最後のフレームを持ったまま false を返し続ける）
+    // -------------------------
+
+    @Override
+    public boolean acquire() {
+        try {
+            return nextFrame();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public long frameId() {
+        return frameId;
+    }
+
+    @Override
+    public boolean read(int[] dst) {
+        if (frameId == 0)
+            return false;
+        System.arraycopy(frame, 0, dst, 0, frame.length);
+        return true;
+    }
+
+    @Override
+    public boolean readRows(int[] dst, int y, int h) {
+        if (frameId == 0)
+            return false;
+        System.arraycopy(frame, y * width, dst, y * width, h * width);
+        return true;
+    }
+
+    // 記録にスクロール位置は無いので、毎フレーム別物として扱う
+    @Override
+    public long scrollEpoch() {
+        return 0;
+    }
+
+    @Override
+    public int scrollY() {
+        return 0;
+    }
+
+    // 直近のフレーム（ARGB、幅 width の詰めたレイアウト）。次の next() で書き換わる
+    int[] pixels() {
+        return frame;
+    }
+
+    int inputKind() {
+        return kind;
+    }
+
+    int inputA() {
+        return a;
+    }
+
+    float inputX() {
+        return x;
+    }
+
+    float inputY() {
+        return y;
+    }
+
+    String inputText() {
+        return text;
+    }
+
+    // -------------------------
+    // Bench（ブリッジの captureDirtyInto と同じ FramePipeline を回す）
+    // -------------------------
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: FrameReplayer <recording> [loops]");
+            return;
+        }
+        final int loops = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        FrameReplayer r = new FrameReplayer(new File(args[0]));
+        final int w = r.width(), h = r.height();
+
+        StripedConverter converter = StripedConverter.shared();
+        CaptureMetrics metrics = new CaptureMetrics();
+        FramePipeline pipeline = new FramePipeline(r, converter, metrics);
+        int[] rects = new int[pipeline.dirtyRectCapacity()];
+
+        long frames = 0;
+        for (int loop = 0; loop < loops; loop++) {
+            r.rewind();
+            // 周ごとに別の出力先にして、先頭フレームを全面更新させる
+            byte[] rgba = new byte[w * h * 4];
+            while (true) {
+                final long before = r.frameId();
+                pipeline.captureDirtyInto(rgba, rects);
+                if (r.frameId() == before)
+                    break; // 記録の終わり
+                frames++;
+            }
+        }
+        System.out.println(w + "x" + h + " frames=" + frames + " " + metrics.summary());
+        converter.shutdown();
+    }
+}
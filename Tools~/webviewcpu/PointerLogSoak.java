@@ -0,0 +1,102 @@
+package webviewcpu;
+
+import java.util.Arrays;
+
+// PointerLog の soak（Android非依存）。90Hz のコントローラ2本ぶんの move と、ときどき押す・離す・tap を積んでは受け取る
+// 1サンプルごとの new が無いこと・送った状態の変化が全部届くこと・溢れても down/up を落とさないことを確かめる
+//   java -cp <classes> webviewcpu.PointerLogSoak [frames]
+final class PointerLogSoak {
+    private static final int MOVES_PER_FRAME = 8;
+    private static final int WARMUP_FRAMES = 2000;
+
+    public static void main(String[] args) {
+        final int frames = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final PointerLog log = new PointerLog();
+        final long[] seen = new long[5]; // type ごとに受け取った数
+
+        for (int f = 0; f < WARMUP_FRAMES; f++)
+            frame(log, f, seen);
+        final long[] sent = new long[5];
+        Arrays.fill(seen, 0);
+        final long allocBefore = Allocations.threadBytes();
+        for (int f = 0; f < frames; f++)
+            count(sent, frame(log, f, seen));
+        final long allocAfter = Allocations.threadBytes();
+        final long allocated = allocBefore >= 0 && allocAfter >= 0 ? allocAfter - allocBefore : -1;
+        final long samples = (long) frames * (MOVES_PER_FRAME * 2 + 1);
+
+        // main looper が止まっている間に押す・離すが溢れるほど来ても、1つも落とさない
+        final int burst = PointerLog.INITIAL_CAPACITY * 4;
+        for (int i = 0; i < burst; i++) {
+            log.add(PointerLog.MOVE, 0, i, i, i);
+            log.add((i & 1) == 0 ? PointerLog.DOWN : PointerLog.UP, 1, i, i, i);
+        }
+        final PointerLog.Buffer b = log.swap();
+        int transitions = 0, moves = 0;
+        for (int i = 0; i < b.count; i++) {
+            if (b.type[i] == PointerLog.MOVE)
+                moves++;
+            else
+                transitions++;
+        }
+        b.count = 0;
+
+        System.out.println("frames=" + frames + " samples=" + samples
+                + " allocated=" + (allocated >= 0 ? allocated + "B" : "n/a")
+                + " down=" + seen[PointerLog.DOWN] + " up=" + seen[PointerLog.UP]
+                + " tap=" + seen[PointerLog.TAP] + " move=" + seen[PointerLog.MOVE]
+                + " burst: transitions=" + transitions + "/" + burst + " moves=" + moves);
+
+        boolean ok = true;
+        if (allocated >= samples) { // 1サンプル 1 バイト未満 = 定常状態では new していない
+            System.out.println("FAIL: pointer path allocates " + (allocated / samples) + "B/sample");
+            ok = false;
+        }
+        for (int t = 0; t < sent.length; t++) {
+            if (seen[t] != sent[t]) {
+                System.out.println("FAIL: type " + t + " sent " + sent[t] + " received " + seen[t]);
+                ok = false;
+            }
+        }
+        if (transitions != burst) {
+            System.out.println("FAIL: dropped " + (burst - transitions) + " down/up on overflow");
+            ok = false;
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        if (!ok)
+            System.exit(1);
+    }
+
+    // 1フレーム分を積んで受け取る。戻り値は積んだ種類のビット（bit = type）
+    private static int frame(PointerLog log, int f, long[] seen) {
+        int sent = 1 << PointerLog.MOVE;
+        if (f % 45 == 0) {
+            log.add(PointerLog.DOWN, 7, 0, 0, f);
+            sent |= 1 << PointerLog.DOWN;
+        }
+        for (int i = 0; i < MOVES_PER_FRAME; i++) {
+            log.add(PointerLog.MOVE, 7, i, f, f);
+            log.add(PointerLog.MOVE, 8, f, i, f);
+        }
+        if (f % 45 == 44) {
+            log.add(PointerLog.UP, 7, 0, 0, f);
+            sent |= 1 << PointerLog.UP;
+        }
+        if (f % 90 == 0) {
+            log.add(PointerLog.TAP, 0, 1, 1, f);
+            sent |= 1 << PointerLog.TAP;
+        }
+        final PointerLog.Buffer b = log.swap();
+        for (int i = 0; i < b.count; i++)
+            seen[b.type[i]]++;
+        b.count = 0;
+        return sent;
+    }
+
+    private static void count(long[] sent, int bits) {
+        for (int t = 0; t < sent.length; t++) {
+            if ((bits & (1 << t)) != 0)
+                sent[t] += t == PointerLog.MOVE ? MOVES_PER_FRAME * 2 : 1;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package webviewcpu;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// ResourceCache の計測（Android非依存）。手元に立てた HTTP サーバを相手に、WebViewCpuBridge.interceptRequest と
+// 同じ順（accepts → get → fetch、null なら WebView が自分で取る）で読み込む
+//   cold：全部取りに行く / warm：ファイルから / hot：大きいものは map から / reopened：索引から開き直した後
+// 4件に1件は no-cache + ETag（毎回 304 で確かめる）、4件に1件は持たないもの（no-store・HTML・JSON）
+// 中身が同じか・パスごとのミス数とサーバへの往復数（持たないものも1回だけ）・hot で map が使われたか・
+// Origin 違いに返さないか・リダイレクトを持たないか・長さの分からない大きすぎる本体を途中から流して返すかを確かめる
+//   java -cp <classes> webviewcpu.ResourceCacheBench [requests] [latencyMs]
+final class ResourceCacheBench {
+    private static final int MAX_BYTES = 64 * 1024 * 1024;
+    private static final String ORIGIN_A = "https://a.example", ORIGIN_B = "https://b.example";
+
+    private static final AtomicInteger served = new AtomicInteger();      // サーバが返した数
+    private static final AtomicInteger notModified = new AtomicInteger(); // そのうち 304
+    private static int verifyFailures = 0;
+
+    public static void main(String[] args) throws Exception {
+        final int requests = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        final int latencyMs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        // JDK の HttpURLConnection は Origin を送らない（Android のものは送る）。最初の接続より前に決める
+        System.setProperty("sun.net.http.allowRestrictedHeaders", "true");
+
+        final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread t = new Thread(() -> serve(server, latencyMs), "ResourceCacheStandIn");
+        t.setDaemon(true);
+        t.start();
+        final String base = "http://127.0.0.1:" + server.getLocalPort() + "/";
+
+        File dir = File.createTempFile("xrrc", "");
+        if (!dir.delete() || !dir.mkdirs())
+            throw new IOException("cannot create " + dir);
+
+        int revalidating = 0, uncached = 0;
+        for (int i = 0; i < requests; i++) {
+            if (i % 4 == 2)
+                revalidating++;
+            else if (i % 4 == 3)
+                uncached++;
+        }
+
+        boolean ok = true;
+        ResourceCache cache = new ResourceCache(dir, MAX_BYTES);
+        final long cold = load(cache, base, requests);
+        System.out.println("cold=" + cold + "ms " + cache.summary());
+        ok &= expect("cold round trips", served.get(), requests); // 持たないものも流して返すので取り直さない
+        final String[] names = {"warm", "hot"};
+        for (String name : names) {
+            final long misses0 = cache.misses(), served0 = served.get(), notModified0 = notModified.get();
+            final long ms = load(cache, base, requests);
+            System.out.println(name + "=" + ms + "ms " + cache.summary());
+            ok &= expect(name + " misses", cache.misses() - misses0, revalidating);
+            ok &= expect(name + " 304", notModified.get() - notModified0, revalidating);
+            ok &= expect(name + " round trips", served.get() - served0, revalidating + uncached);
+        }
+        // 3回目の当たりで map される（ファイルを開かずに返す経路）
+        if (cache.mappedBytes() == 0) {
+            System.out.println("FAIL: hot pass did not map any body");
+            ok = false;
+        }
+
+        // 索引から開き直して、同じものが当たるか（プロセスを跨いだ再訪問）
+        cache.flush();
+        ResourceCache reopened = new ResourceCache(dir, MAX_BYTES);
+        final long again = load(reopened, base, requests);
+        System.out.println("reopened=" + again + "ms " + reopened.summary());
+        ok &= expect("reopened misses", reopened.misses(), revalidating + uncached); // 覚えていた持たないものは忘れる
+
+        ok &= checkOrigin(reopened, base + "font.woff2");
+        ok &= checkRedirect(reopened, base + "moved.css");
+        ok &= checkOversize(reopened, base + "big0.css");
+        if (verifyFailures > 0) {
+            System.out.println("FAIL: " + verifyFailures + " bodies differ");
+            ok = false;
+        }
+        reopened.clear();
+        new File(dir, "index").delete();
+        dir.delete();
+        server.close();
+        System.out.println(ok ? "OK" : "FAILED");
+        if (!ok)
+            System.exit(1);
+    }
+
+    private static boolean expect(String what, long got, long want) {
+        if (got == want)
+            return true;
+        System.out.println("FAIL: " + what + " expected " + want + ", got " + got);
+        return false;
+    }
+
+    // Vary: Origin で Origin を返すフォントは、同じ Origin のリクエストにだけ返す
+    private static boolean checkOrigin(ResourceCache cache, String url) throws IOException {
+        final Map<String, String> a = Collections.singletonMap("Origin", ORIGIN_A);
+        final Map<String, String> b = Collections.singletonMap("Origin", ORIGIN_B);
+        ResourceCache.Response r = cache.fetch(url, a);
+        if (r != null)
+            readAll(r.body);
+        ResourceCache.Response sameOrigin = cache.get(url, a);
+        ResourceCache.Response otherOrigin = cache.get(url, b);
+        if (sameOrigin != null)
+            readAll(sameOrigin.body);
+        final boolean ok = r != null && sameOrigin != null && ORIGIN_A.equals(sameOrigin.allowOrigin)
+                && otherOrigin == null;
+        if (!ok)
+            System.out.println("FAIL: cross-origin entry stored=" + (r != null) + " sameOrigin="
+                    + (sameOrigin != null ? sameOrigin.allowOrigin : null) + " otherOrigin=" + (otherOrigin != null));
+        return ok;
+    }
+
+    // リダイレクトは null（WebView が行き先を取る）で、元の URL で行き先の本体を持たない
+    private static boolean checkRedirect(ResourceCache cache, String url) throws IOException {
+        final int entries = cache.entryCount();
+        final ResourceCache.Response r = cache.fetch(url, null);
+        final boolean ok = r == null && cache.entryCount() == entries && cache.get(url, null) == null;
+        if (!ok)
+            System.out.println("FAIL: redirect response=" + (r != null) + " entries " + entries + " -> " + cache.entryCount());
+        return ok;
+    }
+
+    // Content-Length 無しで maxEntryBytes を超える本体は、読んだ分と残りを続けて返し、持たない
+    private static boolean checkOversize(ResourceCache cache, String url) throws IOException {
+        final int entries = cache.entryCount();
+        final long served0 = served.get();
+        cache.setMaxEntryBytes(1024);
+        final ResourceCache.Response r = cache.fetch(url, null);
+        final byte[] got = r != null ? readAll(r.body) : null;
+        final boolean ok = got != null && Arrays.equals(got, benchBody("big0.css"))
+                && cache.entryCount() == entries && served.get() - served0 == 1;
+        if (!ok)
+            System.out.println("FAIL: oversize body " + (got != null ? got.length + "B" : "null") + " entries "
+                    + entries + " -> " + cache.entryCount() + " round trips " + (served.get() - served0));
+        return ok;
+    }
+
+    // interceptRequest と同じ順で requests 件読む。戻り値は ms
+    private static long load(ResourceCache cache, String base, int requests) throws IOException {
+        final Map<String, String> headers = new HashMap<>();
+        final long t0 = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            final String path = benchPath(i);
+            final String url = base + path;
+            byte[] got = null;
+            if (cache.accepts(url)) {
+                ResourceCache.Response r = cache.get(url, headers);
+                if (r == null)
+                    r = cache.fetch(url, headers);
+                if (r != null)
+                    got = readAll(r.body);
+            }
+            if (got == null)
+                got = plainGet(url); // WebView が自分で取る
+            if (!Arrays.equals(got, benchBody(path)))
+                verifyFailures++;
+        }
+        return (System.nanoTime() - t0) / 1_000_000;
+    }
+
+    // 0 = max-age の CSS、1 = max-age + Last-Modified の PNG、2 = no-cache + ETag の JS、3 = 持たないもの
+    private static String benchPath(int i) {
+        switch (i % 4) {
+            case 0:
+                return "s" + i + ".css";
+            case 1:
+                return "img" + i + ".png";
+            case 2:
+                return "e" + i + ".js";
+            default:
+                switch ((i / 4) % 3) {
+                    case 0:
+                        return "nostore" + i + ".js";
+                    case 1:
+                        return "page" + i + ".html";
+                    default:
+                        return "api" + i + ".json";
+                }
+        }
+    }
+
+    // 1KB〜約100KB（大きいものは3回目の当たりから map される）
+    private static byte[] benchBody(String path) {
+        final int size = 1024 + Math.abs(path.hashCode() % 100) * 1024;
+        final byte[] b = new byte[size];
+        long x = path.hashCode();
+        for (int i = 0; i < size; i++) {
+            x = x * 6364136223846793005L + 1442695040888963407L;
+            b[i] = (byte) (x >>> 56);
+        }
+        return b;
+    }
+
+    private static String benchType(String path) {
+        if (path.endsWith(".css"))
+            return "text/css; charset=utf-8";
+        if (path.endsWith(".png"))
+            return "image/png";
+        if (path.endsWith(".js"))
+            return "application/javascript";
+        if (path.endsWith(".json"))
+            return "application/json";
+        if (path.endsWith(".woff2"))
+            return "font/woff2";
+        return "text/html; charset=utf-8";
+    }
+
+    private static byte[] plainGet(String url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        return readAll(conn.getInputStream());
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream is = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[16 * 1024];
+            int n;
+            while ((n = is.read(chunk)) > 0)
+                out.write(chunk, 0, n);
+            return out.toByteArray();
+        }
+    }
+
+    // 1接続1リクエストの最小限の HTTP/1.1（latencyMs はサーバの往復の代わり）
+    private static void serve(ServerSocket server, int latencyMs) {
+        while (!server.isClosed()) {
+            try (Socket s = server.accept()) {
+                BufferedInputStream in = new BufferedInputStream(s.getInputStream());
+                final String requestLine = readLine(in);
+                String ifNoneMatch = null, origin = null;
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    final int colon = line.indexOf(':');
+                    if (colon < 0)
+                        continue;
+                    final String name = line.substring(0, colon).trim();
+                    final String value = line.substring(colon + 1).trim();
+                    if (name.equalsIgnoreCase("If-None-Match"))
+                        ifNoneMatch = value;
+                    else if (name.equalsIgnoreCase("Origin"))
+                        origin = value;
+                }
+                if (requestLine == null)
+                    continue;
+                final String[] parts = requestLine.split(" ");
+                final String path = parts.length > 1 ? parts[1].substring(1) : "";
+                Thread.sleep(latencyMs);
+                served.incrementAndGet();
+
+                final String etag = "\"v-" + path + "\"";
+                final StringBuilder head = new StringBuilder();
+                byte[] body = benchBody(path);
+                if (path.startsWith("moved")) {
+                    head.append("HTTP/1.1 302 Found\r\nLocation: /s0.css\r\nContent-Length: 0\r\n");
+                    body = new byte[0];
+                } else if (path.startsWith("e") && etag.equals(ifNoneMatch)) {
+                    notModified.incrementAndGet();
+                    head.append("HTTP/1.1 304 Not Modified\r\n");
+                    body = new byte[0];
+                } else {
+                    head.append("HTTP/1.1 200 OK\r\n")
+                            .append("Content-Type: ").append(benchType(path)).append("\r\n");
+                    if (!path.startsWith("big")) // big は接続を閉じるまでが本体
+                        head.append("Content-Length: ").append(body.length).append("\r\n");
+                }
+                if (path.startsWith("nostore"))
+                    head.append("Cache-Control: no-store\r\n");
+                else if (path.startsWith("e"))
+                    head.append("Cache-Control: no-cache\r\nETag: ").append(etag).append("\r\n");
+                else
+                    head.append("Cache-Control: max-age=3600\r\n");
+                if (path.startsWith("img"))
+                    head.append("Last-Modified: Mon, 01 Jan 2024 00:00:00 GMT\r\n");
+                if (path.startsWith("font") && origin != null)
+                    head.append("Vary: Origin\r\nAccess-Control-Allow-Origin: ").append(origin).append("\r\n");
+                head.append("Connection: close\r\n\r\n");
+                OutputStream out = s.getOutputStream();
+                out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+                out.write(body);
+                out.flush();
+            } catch (IOException e) {
+                // 閉じられた・切られた
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '\n')
+                return sb.toString();
+            if (c != '\r')
+                sb.append((char) c);
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+}
@@ -0,0 +1,90 @@
+package webviewcpu;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// SharedFrameBuffer の soak（Android非依存）。書き手と読み手を別スレッドで回し、SEQ が同じなのに中身が混ざったフレームが無いか数える
+// 書き手は読み手が SEQ を拾うまで待ってから次を書く（写している最中に次のフレームが重なる）
+// 待たないと書き手がほぼずっと奇数の SEQ を出していて、読み手はほとんど読めない
+//   java -cp <classes> webviewcpu.SharedFrameBufferSoak [frames]
+final class SharedFrameBufferSoak {
+    private static final long PACE_TIMEOUT_NANOS = 2_000_000;
+    private static volatile int fenceSink;
+
+    public static void main(String[] args) throws InterruptedException {
+        final int frames = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final int w = 256, h = 256;
+        final SharedFrameBuffer shared = new SharedFrameBuffer(w, h, OutputFormat.RGBA32, 4);
+        final ByteBuffer mem = shared.buffer().duplicate().order(ByteOrder.nativeOrder());
+        final int frameBytes = w * h * 4;
+        final long[] stats = new long[3]; // 読めた・破れて捨てた・混ざっていた
+        final AtomicInteger seen = new AtomicInteger(); // 読み手が拾った直近の SEQ
+
+        Thread reader = new Thread(() -> {
+            final byte[] copy = new byte[frameBytes];
+            int last = 0;
+            while (true) {
+                final int s0 = mem.getInt(SharedFrameBuffer.OFF_SEQ);
+                if ((s0 & 1) != 0 || s0 == last) {
+                    if (s0 >= frames * 2)
+                        return;
+                    Thread.yield(); // コアが少ない端末でも書き手に番を回す
+                    continue;
+                }
+                seen.set(s0);
+                final long id = mem.getLong(SharedFrameBuffer.OFF_FRAME_ID);
+                mem.position(SharedFrameBuffer.HEADER_BYTES);
+                mem.get(copy);
+                fence();
+                if (mem.getInt(SharedFrameBuffer.OFF_SEQ) != s0) {
+                    stats[1]++;
+                    continue;
+                }
+                last = s0;
+                stats[0]++;
+                // 書き手は全面を frameId の下位 8bit で埋める
+                for (int i = 0; i < frameBytes; i += 997) {
+                    if (copy[i] != (byte) id) {
+                        stats[2]++;
+                        break;
+                    }
+                }
+            }
+        }, "SharedFrameReader");
+        reader.start();
+
+        final long t0 = System.nanoTime();
+        for (int f = 1; f <= frames; f++) {
+            Arrays.fill(shared.staging(), (byte) f);
+            shared.publishFull(w, h, f);
+            final long deadline = System.nanoTime() + PACE_TIMEOUT_NANOS;
+            while (seen.get() < f * 2 && System.nanoTime() < deadline)
+                Thread.yield();
+        }
+        reader.join();
+        final long ms = (System.nanoTime() - t0) / 1_000_000;
+        System.out.println(w + "x" + h + " frames=" + frames + " " + ms + "ms read=" + stats[0]
+                + " torn=" + stats[1] + " mixed=" + stats[2]);
+        boolean ok = true;
+        if (stats[2] != 0) {
+            System.out.println("FAIL: " + stats[2] + " frames mixed two writes");
+            ok = false;
+        }
+        if (stats[0] < frames / 4) { // 読めた数が少ないと破れの検査になっていない
+            System.out.println("FAIL: reader checked only " + stats[0] + " of " + frames + " frames");
+            ok = false;
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        if (!ok)
+            System.exit(1);
+    }
+
+    // 読み手側の fence（SharedFrameBuffer.fence と同じ、volatile の書き込み→読み出し）
+    private static void fence() {
+        fenceSink = 0;
+        if (fenceSink != 0)
+            throw new IllegalStateException();
+    }
+}
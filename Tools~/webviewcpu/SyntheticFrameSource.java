@@ -0,0 +1,146 @@
+package webviewcpu;
+
+// 動くページもどきを作る FrameSource（Android非依存）
+// 単色の背景に、横に流れる帯と点滅するブロック（カーソル・スピナー相当）だけが変わる
+// main() は長時間回してヒープの増加とフレームごとの new が無いことを確かめる（Proceedings.md の OOM 対策）
+//   java -cp <classes> webviewcpu.SyntheticFrameSource [frames] [width] [height]
+final class SyntheticFrameSource implements FrameSource {
+    private static final int BACKGROUND = 0xFFFFFFFF;
+    private static final int BAR = 0xFF3366CC;
+    private static final int BLOCK_ON = 0xFF000000;
+    private static final int BAR_WIDTH = 24;
+    private static final int BLOCK_SIZE = 16;
+
+    private final int width, height;
+    private long frameId = 0;
+
+    SyntheticFrameSource(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+
+    // 呼ぶたびに1フレーム進む
+    @Override
+    public boolean acquire() {
+        frameId++;
+        return true;
+    }
+
+    @Override
+    public long frameId() {
+        return frameId;
+    }
+
+    @Override
+    public boolean read(int[] dst) {
+        if (frameId == 0)
+            return false;
+        final int barX = (int) ((frameId * 8) % width);
+        final boolean blockOn = (frameId & 1) != 0;
+        for (int y = 0; y < height; y++) {
+            final int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int c = BACKGROUND;
+                if (x >= barX && x < barX + BAR_WIDTH && y < height / 4)
+                    c = BAR;
+                else if (blockOn && x < BLOCK_SIZE && y >= height / 2 && y < height / 2 + BLOCK_SIZE)
+                    c = BLOCK_ON;
+                dst[row + x] = c;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean readRows(int[] dst, int y, int h) {
+        return read(dst); // 全面でも十分軽い
+    }
+
+    // スクロールはしない（毎フレーム別物として扱う）
+    @Override
+    public long scrollEpoch() {
+        return 0;
+    }
+
+    @Override
+    public int scrollY() {
+        return 0;
+    }
+
+    // -------------------------
+    // Soak（ブリッジの capture と同じ FramePipeline を回す）
+    // -------------------------
+
+    private static final int WARMUP_FRAMES = 2000;
+    private static final long MAX_HEAP_GROWTH_BYTES = 1024 * 1024;
+
+    public static void main(String[] args) {
+        final int frames = args.length > 0 ? Integer.parseInt(args[0]) : 30000;
+        final int w = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+        final int h = args.length > 2 ? Integer.parseInt(args[2]) : 512;
+
+        CaptureMetrics metrics = new CaptureMetrics();
+        StripedConverter converter = StripedConverter.shared();
+        FramePipeline pipeline = new FramePipeline(new SyntheticFrameSource(w, h), converter, metrics);
+        byte[] dirtyOut = new byte[w * h * 4];
+        byte[] fullOut = new byte[w * h * 4];
+        int[] rects = new int[pipeline.dirtyRectCapacity()];
+
+        for (int i = 0; i < WARMUP_FRAMES; i++)
+            step(pipeline, i, dirtyOut, fullOut, rects);
+
+        final long heapBefore = usedHeapAfterGc();
+        final long allocBefore = Allocations.threadBytes();
+
+        for (int i = 0; i < frames; i++)
+            step(pipeline, i, dirtyOut, fullOut, rects);
+
+        final long allocAfter = Allocations.threadBytes();
+        final long heapAfter = usedHeapAfterGc();
+        converter.shutdown();
+
+        final long allocated = allocBefore >= 0 && allocAfter >= 0 ? allocAfter - allocBefore : -1;
+        final long growth = heapAfter - heapBefore;
+        System.out.println(w + "x" + h + " frames=" + frames
+                + " allocated=" + (allocated >= 0 ? allocated + "B" : "n/a")
+                + " heapGrowth=" + growth + "B " + metrics.summary());
+
+        boolean ok = true;
+        if (allocated >= frames) { // 1フレーム 1 バイト未満 = 定常状態では new していない
+            System.out.println("FAIL: capture path allocates " + (allocated / frames) + "B/frame");
+            ok = false;
+        }
+        if (growth > MAX_HEAP_GROWTH_BYTES) {
+            System.out.println("FAIL: heap grew " + growth + "B");
+            ok = false;
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        if (!ok)
+            System.exit(1);
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // 差分タイルが基本、ときどき全面（Unity 側の dirtyTiles / 全面の両方を通す）
+    private static void step(FramePipeline pipeline, int i, byte[] dirtyOut, byte[] fullOut, int[] rects) {
+        if (i % 10 == 9)
+            pipeline.captureLatestInto(fullOut);
+        else
+            pipeline.captureDirtyInto(dirtyOut, rects);
+    }
+}
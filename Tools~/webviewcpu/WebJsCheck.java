@@ -0,0 +1,119 @@
+package webviewcpu;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+
+// WebJs.HELPER の確認（Android非依存）。偽の入力欄を置いた node で、ブリッジと同じく helper(token) を入れてから流す
+//   splice：textarea の置き換え / setRangeText が例外になる input[type=email] / 長さが違って捨てて知らせる
+//   focus ：value を送るのはフォーカスの移動と input のときだけ、scroll はまとめて1回、通知に token が付く
+//   java -cp <classes> webviewcpu.WebJsCheck [node のパス]
+final class WebJsCheck {
+    private static final String CHECK_PRELUDE = ""
+            + "globalThis.window=globalThis;"
+            + "var listeners={};"
+            + "window.addEventListener=function(t,f){listeners[t]=f;};"
+            + "globalThis.document={activeElement:null,addEventListener:function(t,f){listeners[t]=f;}};"
+            + "function fire(t){listeners[t]();}"
+            + "globalThis.Event=function(t){this.type=t;};"
+            + "globalThis.InputEvent=globalThis.KeyboardEvent=globalThis.Event;"
+            + "var rejects=0, pushes=0, values=0, forged=0;"
+            + "globalThis." + WebJs.HOST_NAME + "={"
+            + "  onFocus:function(t,j,v){ if(t!==TOKEN){forged++; return;} pushes++; if(v!==null) values++; },"
+            + "  onSpliceRejected:function(t){ if(t!==TOKEN){forged++; return;} rejects++; }};"
+            + "function field(tag,type,value,rangeOk){"
+            + "  var e={tagName:tag,type:type,value:value,dispatchEvent:function(){}};"
+            + "  e.setRangeText=function(t,s,x){"
+            + "    if(!rangeOk) throw new Error('InvalidStateError');"
+            + "    this.value=this.value.substring(0,s)+t+this.value.substring(x);"
+            + "  };"
+            + "  e.setSelectionRange=function(){ if(!rangeOk) throw new Error('InvalidStateError'); };"
+            + "  return e;"
+            + "}"
+            + "function check(e,script){"
+            + "  document.activeElement=e; rejects=0;"
+            + "  eval(script);"
+            + "  console.log(JSON.stringify(e.value)+' rejects='+rejects);"
+            + "}"
+            // 10万文字の textarea で、選択の移動50回・入力1回・scroll 10回
+            + "function wait(ms){ return new Promise(function(r){ setTimeout(r,ms); }); }"
+            + "async function focusCheck(){"
+            + "  await wait(0); pushes=values=0;"
+            + "  var e=field('TEXTAREA','textarea','x'.repeat(100000),true), y=0;"
+            + "  e.getBoundingClientRect=function(){ return {x:0,y:y,width:100,height:20}; };"
+            + "  document.activeElement=e; fire('focusin'); await wait(0);"
+            + "  for(var i=0;i<50;i++){ e.selectionStart=e.selectionEnd=i; fire('selectionchange'); await wait(0); }"
+            + "  e.value+='y'; fire('input'); await wait(0);"
+            + "  for(var k=0;k<10;k++){ y++; fire('scroll'); }"
+            + "  await wait(" + (WebJs.SCROLL_PUSH_MS * 3) + ");"
+            + "  console.log('focus pushes='+pushes+' values='+values+' forged='+forged);"
+            + "}";
+
+    public static void main(String[] args) throws Exception {
+        final String node = args.length > 0 ? args[0] : "node";
+        final String[][] cases = {
+                // tag, type, value, setRangeText が使えるか, start, deleteCount, text, expectedLength, 期待する出力
+                {"TEXTAREA", "textarea", "hello world", "true", "6", "5", "there", "11", "\"hello there\" rejects=0"},
+                {"INPUT", "email", "a@b", "false", "3", "0", ".jp", "3", "\"a@b.jp\" rejects=0"},
+                {"TEXTAREA", "textarea", "abc", "true", "1", "1", "X", "5", "\"abc\" rejects=1"},
+        };
+
+        final StringBuilder js = new StringBuilder();
+        final String token = WebJs.newToken();
+        js.append("var TOKEN=");
+        WebJs.quoteInto(js, token);
+        js.append(';').append(CHECK_PRELUDE).append(WebJs.helper(token));
+        final JsCommandQueue q = new JsCommandQueue();
+        for (String[] c : cases) {
+            q.addSplice(Integer.parseInt(c[4]), Integer.parseInt(c[5]), c[6], Integer.parseInt(c[7]));
+            js.append("check(field(");
+            WebJs.quoteInto(js, c[0]);
+            js.append(',');
+            WebJs.quoteInto(js, c[1]);
+            js.append(',');
+            WebJs.quoteInto(js, c[2]);
+            js.append(',').append(c[3]).append("),");
+            WebJs.quoteInto(js, q.drainScript());
+            js.append(");");
+        }
+        js.append("focusCheck();");
+        // 入ったときの1回 + 選択50回 + 入力1回 + scroll まとめて1回。value は入ったときと入力のときだけ
+        final String focusExpected = "focus pushes=53 values=2 forged=0";
+
+        final File file = File.createTempFile("webjs-check", ".js");
+        file.deleteOnExit();
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            w.write(js.toString());
+        }
+        final Process proc = new ProcessBuilder(node, file.getPath()).redirectErrorStream(true).start();
+        final ArrayList<String> lines = new ArrayList<>();
+        try (BufferedReader r = new BufferedReader(
+                new InputStreamReader(proc.getInputStream(), "UTF-8"))) {
+            for (String line; (line = r.readLine()) != null; )
+                lines.add(line);
+        }
+        final int exit = proc.waitFor();
+
+        boolean ok = exit == 0 && lines.size() == cases.length + 1;
+        for (int i = 0; i < cases.length; i++) {
+            final String got = i < lines.size() ? lines.get(i) : "(none)";
+            final boolean pass = got.equals(cases[i][8]);
+            System.out.println((pass ? "ok   " : "FAIL ") + cases[i][1] + " splice(" + cases[i][4] + "," + cases[i][5]
+                    + "," + cases[i][6] + "," + cases[i][7] + ") -> " + got);
+            ok &= pass;
+        }
+        final String focusGot = cases.length < lines.size() ? lines.get(cases.length) : "(none)";
+        final boolean focusPass = focusGot.equals(focusExpected);
+        System.out.println((focusPass ? "ok   " : "FAIL ") + focusGot + (focusPass ? "" : " (expected " + focusExpected + ")"));
+        ok &= focusPass;
+        for (int i = cases.length + 1; i < lines.size(); i++)
+            System.out.println("  " + lines.get(i));
+        System.out.println(ok ? "OK" : "FAILED");
+        if (!ok)
+            System.exit(1);
+    }
+}
@@ -0,0 +1,184 @@
+package webviewcpu;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// capture パイプラインの段ごとの所要時間と件数（Android非依存）
+// 記録は new 無し・ロック無し（AtomicLongArray への加算だけ）。main looper と呼び出し側の両方から書く
+// 所要時間は µs の log2 ヒストグラムで持つ（bucket b = [2^(b-1), 2^b) µs、b=0 は 1µs 未満）
+final class CaptureMetrics {
+
+    // -------------------------
+    // Stages
+    // -------------------------
+    static final int STAGE_QUEUE = 0;   // requestDraw → drawFrame 開始（main looper の待ち）
+    static final int STAGE_DRAW = 1;    // webView.draw（main looper。off-main raster のときは Picture への記録）
+    static final int STAGE_READ = 2;    // getPixels / copyPixelsToBuffer
+    static final int STAGE_CONVERT = 3; // ARGB → RGBA
+    static final int STAGE_DIFF = 4;    // DirtyTileTracker.diff
+    static final int STAGE_CAPTURE = 5; // capture 呼び出し全体（新フレームがあったときだけ）
+    static final int STAGE_RASTER = 6;  // Picture → Bitmap（off-main raster のときだけ、raster スレッド）
+    static final int STAGE_COUNT = 7;
+
+    private static final String[] STAGE_NAMES = {"queue", "draw", "read", "convert", "diff", "capture", "raster"};
+
+    // -------------------------
+    // Counters
+    // -------------------------
+    static final int FRAMES_PRODUCED = 0; // publish したフレーム
+    static final int FRAMES_CONSUMED = 1; // front に取り込んだフレーム
+    static final int NO_NEW_FRAME = 2;    // capture したが新フレームが無かった
+    static final int CAPTURE_FAILED = 3;  // 引数不正など
+    static final int FROZEN_SKIPS = 4;    // 凍結中で capture できなかった
+    static final int DRAW_FAILED = 5;     // draw が例外（描きかけは公開しない）
+    static final int DRAW_SKIPPED = 6;    // 変化なしで描かなかった
+    static final int JS_QUEUED = 7;       // JsCommandQueue に積んだ命令
+    static final int JS_EXECUTED = 8;     // 流した evaluateJavascript
+    static final int JS_DROPPED = 9;      // WebView が無くて捨てた evaluateJavascript
+    static final int SCROLL_DRAWS = 10;   // 前のフレームをずらして出てきた帯だけ描いたフレーム
+    static final int SCROLL_CAPTURES = 11; // 出力をずらして出てきた行だけ読んだ capture
+    static final int COUNTER_COUNT = 12;
+
+    private static final String[] COUNTER_NAMES = {
+            "produced", "consumed", "noNew", "failed", "frozen",
+            "drawFailed", "drawSkipped", "jsQueued", "jsExec", "jsDropped",
+            "scrollDraws", "scrollCaptures"};
+
+    static final int BUCKETS = 24; // 最大 2^23 µs ≒ 8.4s（それ以上は最後に入れる）
+
+    // snapshot の並び：counters → stage ごとに {count, sumUs, maxUs, p50Us, p90Us, p99Us}
+    static final int STAGE_FIELDS = 6;
+    static final int SNAPSHOT_LENGTH = COUNTER_COUNT + STAGE_COUNT * STAGE_FIELDS;
+
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTER_COUNT);
+    private final AtomicLongArray histogram = new AtomicLongArray(STAGE_COUNT * BUCKETS);
+    private final AtomicLongArray sumUs = new AtomicLongArray(STAGE_COUNT);
+    private final AtomicLongArray maxUs = new AtomicLongArray(STAGE_COUNT);
+
+    private volatile boolean enabled = true;
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    // 計測の開始時刻（無効なら 0）
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    // start() からの経過を stage に記録する
+    void stop(int stage, long startNanos) {
+        if (startNanos == 0)
+            return;
+        record(stage, (System.nanoTime() - startNanos) / 1000);
+    }
+
+    void record(int stage, long us) {
+        if (!enabled)
+            return;
+        if (us < 0)
+            us = 0;
+        histogram.incrementAndGet(stage * BUCKETS + bucketOf(us));
+        sumUs.addAndGet(stage, us);
+        long m;
+        while (us > (m = maxUs.get(stage))) {
+            if (maxUs.compareAndSet(stage, m, us))
+                break;
+        }
+    }
+
+    void count(int counter) {
+        if (enabled)
+            counters.incrementAndGet(counter);
+    }
+
+    static int bucketOf(long us) {
+        int b = 64 - Long.numberOfLeadingZeros(us);
+        return b < BUCKETS ? b : BUCKETS - 1;
+    }
+
+    // bucket の上限（µs）。パーセンタイルはこの値で返す（最大 2 倍の過大評価）
+    static long bucketUpperUs(int b) {
+        return 1L << b;
+    }
+
+    void reset() {
+        for (int i = 0; i < COUNTER_COUNT; i++)
+            counters.set(i, 0);
+        for (int i = 0; i < histogram.length(); i++)
+            histogram.set(i, 0);
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            sumUs.set(i, 0);
+            maxUs.set(i, 0);
+        }
+    }
+
+    // out に SNAPSHOT_LENGTH 個を詰める（足りなければ入る段まで）。戻り値は書いた個数
+    // 項目ごとに読むので、記録と同時だと項目間で1件程度ずれることがある
+    int snapshot(long[] out) {
+        final int n = Math.min(out.length, SNAPSHOT_LENGTH);
+        int o = 0;
+        for (int i = 0; i < COUNTER_COUNT && o < n; i++)
+            out[o++] = counters.get(i);
+        for (int s = 0; s < STAGE_COUNT; s++) {
+            if (o + STAGE_FIELDS > n)
+                break;
+            long count = stageCount(s);
+            out[o++] = count;
+            out[o++] = sumUs.get(s);
+            out[o++] = maxUs.get(s);
+            out[o++] = percentileUs(s, count, 50);
+            out[o++] = percentileUs(s, count, 90);
+            out[o++] = percentileUs(s, count, 99);
+        }
+        return o;
+    }
+
+    long stageCount(int stage) {
+        long c = 0;
+        final int base = stage * BUCKETS;
+        for (int b = 0; b < BUCKETS; b++)
+            c += histogram.get(base + b);
+        return c;
+    }
+
+    long percentileUs(int stage, long count, int pct) {
+        if (count <= 0)
+            return 0;
+        final long rank = (count * pct + 99) / 100;
+        final int base = stage * BUCKETS;
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += histogram.get(base + b);
+            if (seen >= rank)
+                return bucketUpperUs(b);
+        }
+        return bucketUpperUs(BUCKETS - 1);
+    }
+
+    // logcat 用の1行（計測した段だけ）
+    String summary() {
+        StringBuilder sb = new StringBuilder(256);
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            if (i > 0)
+                sb.append(' ');
+            sb.append(COUNTER_NAMES[i]).append('=').append(counters.get(i));
+        }
+        for (int s = 0; s < STAGE_COUNT; s++) {
+            long count = stageCount(s);
+            if (count == 0)
+                continue;
+            sb.append(" | ").append(STAGE_NAMES[s])
+                    .append(" n=").append(count)
+                    .append(" avg=").append(sumUs.get(s) / count)
+                    .append(" p50<").append(percentileUs(s, count, 50))
+                    .append(" p90<").append(percentileUs(s, count, 90))
+                    .append(" p99<").append(percentileUs(s, count, 99))
+                    .append(" max=").append(maxUs.get(s)).append("us");
+        }
+        return sb.toString();
+    }
+}
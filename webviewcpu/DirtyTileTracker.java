@@ -0,0 +1,149 @@
+package webviewcpu;
+
+// 前フレームとタイル単位で比較し、変化したタイルだけを列挙する（Android非依存）
+// 矩形は同じタイル行で横に連続するタイルをまとめた {x, y, w, h} の並び
+final class DirtyTileTracker {
+    static final int DEFAULT_TILE_SIZE = 64;
+
+    private final int width, height;
+    private final int tileSize;
+    private final int tilesX, tilesY;
+
+    private final int[] prev;        // 前フレーム（ARGB）
+    private final boolean[] dirty;   // tilesX * tilesY
+    private boolean hasPrev = false;
+
+    DirtyTileTracker(int width, int height, int tileSize) {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.tilesX = (width + tileSize - 1) / tileSize;
+        this.tilesY = (height + tileSize - 1) / tileSize;
+        this.prev = new int[width * height];
+        this.dirty = new boolean[tilesX * tilesY];
+    }
+
+    int tileSize() {
+        return tileSize;
+    }
+
+    int tilesX() {
+        return tilesX;
+    }
+
+    int tilesY() {
+        return tilesY;
+    }
+
+    // 最悪ケース（市松模様）でも足りる矩形配列の長さ
+    int maxRectInts() {
+        return maxRectInts(width, height, tileSize);
+    }
+
+    // 同じ値をトラッカーを作らずに（作ると width*height の prev を確保する）
+    static int maxRectInts(int width, int height, int tileSize) {
+        final int tx = (width + tileSize - 1) / tileSize;
+        final int ty = (height + tileSize - 1) / tileSize;
+        return ((tx + 1) / 2) * ty * 4;
+    }
+
+    boolean isDirty(int tx, int ty) {
+        return dirty[ty * tilesX + tx];
+    }
+
+    // 次の diff を全面 dirty 扱いにする（サイズ変更・出力先の差し替え時など）
+    void invalidate() {
+        hasPrev = false;
+    }
+
+    // cur（幅 width の ARGB）を前フレームと比較し、変化したタイルを prev に取り込む
+    // 戻り値：outRects に書いた矩形数（変化なしは0）
+    // outRects が足りなければ全面1枚にまとめる（1枚分の4要素も無ければ IllegalArgumentException）
+    int diff(int[] cur, int[] outRects) {
+        final int w = width;
+        final int ts = tileSize;
+
+        for (int ty = 0; ty < tilesY; ty++) {
+            final int y0 = ty * ts;
+            final int y1 = Math.min(y0 + ts, height);
+            for (int tx = 0; tx < tilesX; tx++) {
+                final int x0 = tx * ts;
+                final int tw = Math.min(x0 + ts, w) - x0;
+
+                boolean changed = !hasPrev;
+                if (!changed) {
+                    for (int y = y0; y < y1 && !changed; y++) {
+                        int p = y * w + x0;
+                        int end = p + tw;
+                        for (; p < end; p++) {
+                            if (cur[p] != prev[p]) {
+                                changed = true;
+                                break;
+                            }
+                        }
+                    }
+                }
+
+                if (changed) {
+                    for (int y = y0; y < y1; y++) {
+                        int p = y * w + x0;
+                        System.arraycopy(cur, p, prev, p, tw);
+                    }
+                }
+                dirty[ty * tilesX + tx] = changed;
+            }
+        }
+        hasPrev = true;
+
+        return collectRects(outRects);
+    }
+
+    // cur を比べずにそのまま前フレームとして取り込み、全面1枚を返す（スクロールで全行が動いたときなど）
+    int adopt(int[] cur, int[] outRects) {
+        System.arraycopy(cur, 0, prev, 0, prev.length);
+        hasPrev = true;
+        return fullFrame(outRects);
+    }
+
+    private int collectRects(int[] outRects) {
+        final int ts = tileSize;
+        int n = 0;
+        for (int ty = 0; ty < tilesY; ty++) {
+            int tx = 0;
+            while (tx < tilesX) {
+                if (!dirty[ty * tilesX + tx]) {
+                    tx++;
+                    continue;
+                }
+                int start = tx;
+                while (tx < tilesX && dirty[ty * tilesX + tx])
+                    tx++;
+
+                if (outRects == null || (n + 1) * 4 > outRects.length)
+                    return fullFrame(outRects);
+
+                int x = start * ts;
+                int y = ty * ts;
+                outRects[n * 4] = x;
+                outRects[n * 4 + 1] = y;
+                outRects[n * 4 + 2] = Math.min(tx * ts, width) - x;
+                outRects[n * 4 + 3] = Math.min(y + ts, height) - y;
+                n++;
+            }
+        }
+        return n;
+    }
+
+    // 0 を返すと呼び出し側は「変化なし」と読んで全面の描き直しを落とすので、書けないなら例外にする
+    private int fullFrame(int[] outRects) {
+        if (outRects == null || outRects.length < 4)
+            throw new IllegalArgumentException("outRects needs at least 4 ints");
+        for (int i = 0; i < dirty.length; i++)
+            dirty[i] = true;
+        outRects[0] = 0;
+        outRects[1] = 0;
+        outRects[2] = width;
+        outRects[3] = height;
+        return 1;
+    }
+}
@@ -0,0 +1,194 @@
+package webviewcpu;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// フレームの軽い可逆圧縮（Android非依存）
+// 4byte（1ピクセル）単位の RLE。Webページは背景・余白の単色が多いので、これだけで数分の1になる
+// 並び（int, ネイティブエンディアン）：w, h, 以降トークンの列
+//   t > 0 : 次の1ピクセルを t 回繰り返す
+//   t < 0 : 続く -t ピクセルをそのまま
+// ピクセルの意味は見ないので ARGB の int でも Bitmap のメモリ並びでもよい
+final class FrameCodec {
+    private FrameCodec() {
+    }
+
+    private static final int HEADER_INTS = 2;
+    private static final int MIN_RUN = 3; // これより短い繰り返しはそのまま並べる
+
+    // encode の出力が収まる最大バイト数（最悪でも素のサイズ + トークン1個ぶん程度）
+    static int maxEncodedBytes(int w, int h) {
+        return (w * h + HEADER_INTS + 2) * 4;
+    }
+
+    // src の先頭 w*h ピクセル（4byte ずつ）を dst の 0 から書く。戻り値は書いたバイト数
+    // dst は maxEncodedBytes 以上、どちらもネイティブエンディアンにしておくこと
+    static int encode(ByteBuffer src, int w, int h, ByteBuffer dst) {
+        final int n = w * h;
+        int o = 0;
+        dst.putInt(o, w);
+        dst.putInt(o + 4, h);
+        o += HEADER_INTS * 4;
+
+        int litStart = 0; // まだ書いていない素のピクセルの先頭
+        int i = 0;
+        while (i < n) {
+            final int c = src.getInt(i * 4);
+            int j = i + 1;
+            while (j < n && src.getInt(j * 4) == c)
+                j++;
+            final int run = j - i;
+            if (run < MIN_RUN) {
+                i = j;
+                continue;
+            }
+            o = putLiteral(src, litStart, i, dst, o);
+            dst.putInt(o, run);
+            dst.putInt(o + 4, c);
+            o += 8;
+            i = j;
+            litStart = j;
+        }
+        return putLiteral(src, litStart, n, dst, o);
+    }
+
+    private static int putLiteral(ByteBuffer src, int from, int to, ByteBuffer dst, int o) {
+        final int len = to - from;
+        if (len <= 0)
+            return o;
+        dst.putInt(o, -len);
+        o += 4;
+        for (int k = from; k < to; k++, o += 4)
+            dst.putInt(o, src.getInt(k * 4));
+        return o;
+    }
+
+    static int width(ByteBuffer enc) {
+        return enc.getInt(0);
+    }
+
+    static int height(ByteBuffer enc) {
+        return enc.getInt(4);
+    }
+
+    // enc を dst の 0 から w*h*4 バイトに展開する。サイズが合わない・壊れていれば false
+    static boolean decode(ByteBuffer enc, int w, int h, ByteBuffer dst) {
+        if (width(enc) != w || height(enc) != h || dst.capacity() < w * h * 4)
+            return false;
+        final int n = w * h;
+        final int end = enc.limit();
+        int p = HEADER_INTS * 4;
+        int i = 0;
+        while (i < n && p + 4 <= end) {
+            int t = enc.getInt(p);
+            p += 4;
+            if (t > 0) {
+                if (i + t > n || p + 4 > end)
+                    return false;
+                final int c = enc.getInt(p);
+                p += 4;
+                for (int k = 0; k < t; k++, i++)
+                    dst.putInt(i * 4, c);
+            } else {
+                t = -t;
+                if (i + t > n || p + t * 4 > end)
+                    return false;
+                for (int k = 0; k < t; k++, i++, p += 4)
+                    dst.putInt(i * 4, enc.getInt(p));
+            }
+        }
+        return i == n;
+    }
+
+    // -------------------------
+    // XOR delta（FrameRecorder / FrameReplayer）
+    // 前フレームとの XOR を同じトークン形式で RLE する（ヘッダ無し）
+    // 変化の無いピクセルは 0 になるので、ほとんど「0 を t 回」のトークンになる
+    // -------------------------
+
+    static int maxDeltaBytes(int pixels) {
+        return (pixels + 2) * 4;
+    }
+
+    // cur と prev（null なら 0）の XOR を dst の off から書く。戻り値は書き終えた位置
+    static int encodeXor(int[] cur, int[] prev, int n, ByteBuffer dst, int off) {
+        int o = off;
+        int litStart = 0;
+        int i = 0;
+        while (i < n) {
+            final int c = prev != null ? cur[i] ^ prev[i] : cur[i];
+            int j = i + 1;
+            if (prev != null) {
+                while (j < n && (cur[j] ^ prev[j]) == c)
+                    j++;
+            } else {
+                while (j < n && cur[j] == c)
+                    j++;
+            }
+            final int run = j - i;
+            if (run < MIN_RUN) {
+                i = j;
+                continue;
+            }
+            o = putXorLiteral(cur, prev, litStart, i, dst, o);
+            dst.putInt(o, run);
+            dst.putInt(o + 4, c);
+            o += 8;
+            i = j;
+            litStart = j;
+        }
+        return putXorLiteral(cur, prev, litStart, n, dst, o);
+    }
+
+    private static int putXorLiteral(int[] cur, int[] prev, int from, int to, ByteBuffer dst, int o) {
+        final int len = to - from;
+        if (len <= 0)
+            return o;
+        dst.putInt(o, -len);
+        o += 4;
+        for (int k = from; k < to; k++, o += 4)
+            dst.putInt(o, prev != null ? cur[k] ^ prev[k] : cur[k]);
+        return o;
+    }
+
+    // src[off, off+len) の XOR delta を frame に重ねる（frame には前フレームを入れて渡す）
+    static boolean decodeXor(ByteBuffer src, int off, int len, int[] frame, int n) {
+        final int end = off + len;
+        int p = off;
+        int i = 0;
+        while (i < n && p + 4 <= end) {
+            int t = src.getInt(p);
+            p += 4;
+            if (t > 0) {
+                if (i + t > n || p + 4 > end)
+                    return false;
+                final int c = src.getInt(p);
+                p += 4;
+                if (c == 0) {
+                    i += t; // 変化なし
+                    continue;
+                }
+                for (int k = 0; k < t; k++, i++)
+                    frame[i] ^= c;
+            } else {
+                t = -t;
+                if (i + t > n || p + t * 4 > end)
+                    return false;
+                for (int k = 0; k < t; k++, i++, p += 4)
+                    frame[i] ^= src.getInt(p);
+            }
+        }
+        return i == n && p == end;
+    }
+
+    // scratch の先頭 len バイトを、ちょうどの大きさの direct バッファに写す（キャッシュに入れる用）
+    static ByteBuffer copyOf(ByteBuffer scratch, int len) {
+        ByteBuffer out = ByteBuffer.allocateDirect(len).order(ByteOrder.nativeOrder());
+        ByteBuffer src = scratch.duplicate();
+        src.clear();
+        src.limit(len);
+        out.put(src);
+        out.clear();
+        return out;
+    }
+}
@@ -0,0 +1,353 @@
+package webviewcpu;
+
+// FrameSource から受け取ったフレームを出力形式（OutputFormat）に変換して呼び出し側の配列へ書く（Android非依存）
+// int[] 経由の capture（全面・差分タイル）はすべてここを通る
+// 作業配列は必要になったときに1回だけ確保し、以降のフレームでは new しない
+// 前回と同じ出力先で、source がスクロールだけだと言うフレームは、出力と作業配列をずらして出てきた行だけ読む・変換する
+// captureRegion は複数パネルを並べた atlas（WebViewAtlas）の中の1区画へ書く
+// 呼び出しは capture を呼ぶスレッドだけ
+final class FramePipeline {
+    // WebViewCpuBridge の NO_NEW_FRAME / CAPTURE_FAILED と同じ値
+    static final long NO_NEW_FRAME = 0;
+    static final long CAPTURE_FAILED = -1;
+
+    private final FrameSource source;
+    private final int width, height;
+    private final StripedConverter converter;
+    private final StripedConverter.ArgbConvert convertTask = new StripedConverter.ArgbConvert();
+    private final CaptureMetrics metrics;
+    private int format = OutputFormat.RGBA32;
+
+    private int[] pixelBuf;          // source から読む先
+    private byte[] rgbaBuf;          // captureRgba
+    private DirtyTileTracker tiles;  // captureDirtyInto
+    private byte[] lastDirtyTarget;
+    private byte[] regionTarget;     // captureRegion の出力先と位置（変わったら全面更新）
+    private int regionX, regionY;
+    private int[] regionRects;       // captureRegion の矩形（パネル座標）
+
+    // 直近に全面を書き終えた出力先と、そのフレームの世代・縦位置（pixelBuf も同じフレームを持つ）
+    private byte[] scrollTarget;
+    private long scrollEpoch;
+    private int scrollY;
+
+    FramePipeline(FrameSource source, StripedConverter converter, CaptureMetrics metrics) {
+        this.source = source;
+        this.width = source.width();
+        this.height = source.height();
+        this.converter = converter;
+        this.metrics = metrics;
+    }
+
+    // captureInto / captureLatestInto / captureDirtyInto / convertPacked の出力形式
+    void setFormat(int format) {
+        if (format == this.format)
+            return;
+        this.format = format;
+        lastDirtyTarget = null; // 前回の中身は別形式なので全面更新させる
+        scrollTarget = null;
+    }
+
+    int format() {
+        return format;
+    }
+
+    int frameBytes() {
+        return width * height * OutputFormat.bytesPerPixel(format);
+    }
+
+    // 新しいフレームが無くても直近のフレームを返す（呼ぶたびに同じ配列、形式は常に RGBA32）。まだ無ければ null
+    byte[] captureRgba() {
+        final long t0 = metrics.start();
+        source.acquire();
+        byte[] out = rgbaBuf;
+        if (out == null)
+            rgbaBuf = out = new byte[width * height * 4];
+        if (!writeFrame(OutputFormat.RGBA32, out))
+            return null;
+        metrics.stop(CaptureMetrics.STAGE_CAPTURE, t0);
+        return out;
+    }
+
+    // 新しいフレームが無くても直近のフレームを書き込む
+    boolean captureInto(byte[] outRgba) {
+        if (outRgba == null || outRgba.length < frameBytes()) {
+            metrics.count(CaptureMetrics.CAPTURE_FAILED);
+            return false;
+        }
+
+        final long t0 = metrics.start();
+        source.acquire();
+        if (!writeFrame(format, outRgba))
+            return false;
+        metrics.stop(CaptureMetrics.STAGE_CAPTURE, t0);
+        return true;
+    }
+
+    // 新しいフレームがあるときだけ書き込む。戻り値：フレーム番号 / NO_NEW_FRAME / CAPTURE_FAILED
+    long captureLatestInto(byte[] outRgba) {
+        if (outRgba == null || outRgba.length < frameBytes()) {
+            metrics.count(CaptureMetrics.CAPTURE_FAILED);
+            return CAPTURE_FAILED;
+        }
+
+        final long t0 = metrics.start();
+        if (!source.acquire())
+            return NO_NEW_FRAME;
+        if (!writeFrame(format, outRgba))
+            return NO_NEW_FRAME;
+        metrics.stop(CaptureMetrics.STAGE_CAPTURE, t0);
+        return source.frameId();
+    }
+
+    // 前フレームから変化したタイルだけを outRgba に変換する（変化のないタイルは前回の内容のまま）
+    // 戻り値：矩形数（0=変化なし） / -1=失敗
+    int captureDirtyInto(byte[] outRgba, int[] outRects) {
+        if (outRgba == null || outRgba.length < frameBytes()
+                || outRects == null || outRects.length < 4) {
+            metrics.count(CaptureMetrics.CAPTURE_FAILED);
+            return -1;
+        }
+
+        final long t0 = metrics.start();
+        final DirtyTileTracker tiles = tiles();
+        // 出力先が変わったら前回内容は当てにならないので全面更新
+        if (outRgba != lastDirtyTarget) {
+            tiles.invalidate();
+            lastDirtyTarget = outRgba;
+            regionTarget = null;
+        }
+
+        if (!source.acquire())
+            return 0;
+        if (scroll(format, outRgba)) {
+            // 全行が動いたので矩形は全面1枚。差分の基準も今の内容に揃える
+            final int n = tiles.adopt(pixelBuf, outRects);
+            metrics.stop(CaptureMetrics.STAGE_CAPTURE, t0);
+            return n;
+        }
+        int[] px = readPixels();
+        if (px == null)
+            return 0;
+
+        final long td = metrics.start();
+        int n = tiles.diff(px, outRects);
+        metrics.stop(CaptureMetrics.STAGE_DIFF, td);
+        remember(outRgba);
+        if (n == 0)
+            return 0;
+
+        final int ts = tiles.tileSize();
+        for (int ty = 0; ty < tiles.tilesY(); ty++) {
+            for (int tx = 0; tx < tiles.tilesX(); tx++) {
+                if (!tiles.isDirty(tx, ty))
+                    continue;
+                int x = tx * ts;
+                int y = ty * ts;
+                convert(format, px, outRgba, x, y, Math.min(ts, width - x), Math.min(ts, height - y));
+            }
+        }
+        metrics.stop(CaptureMetrics.STAGE_CAPTURE, t0);
+        return n;
+    }
+
+    // 幅 stride（ピクセル）の atlas の (ox, oy) から width*height の区画に書く
+    // rects が null なら新フレームのとき区画の全面を書いて 1
+    // rects があれば変化したタイルだけ書き、atlas 座標の矩形を rects[rectOff] から足す
+    // スクロールのずらしは使わない（区画の外を触らないため）。戻り値：矩形数（0=変化なし） / -1=失敗
+    int captureRegion(byte[] out, int stride, int ox, int oy, int[] rects, int rectOff) {
+        if (out == null || ox < 0 || oy < 0 || ox + width > stride
+                || (long) (oy + height) * stride * OutputFormat.bytesPerPixel(format) > out.length
+                || rects != null && (rectOff < 0 || rects.length - rectOff < dirtyRectCapacity())) {
+            metrics.count(CaptureMetrics.CAPTURE_FAILED);
+            return -1;
+        }
+
+        final long t0 = metrics.start();
+        final DirtyTileTracker tiles = tiles();
+        if (out != regionTarget || ox != regionX || oy != regionY) {
+            tiles.invalidate();
+            regionTarget = out;
+            regionX = ox;
+            regionY = oy;
+            lastDirtyTarget = null;
+        }
+        scrollTarget = null;
+
+        if (!source.acquire())
+            return 0;
+        int[] px = readPixels();
+        if (px == null)
+            return 0;
+        if (rects == null) {
+            convertTo(px, out, stride, ox, oy, 0, 0, width, height);
+            regionTarget = null; // 差分の基準は進めていないので、次に差分で書くときは全面から
+            metrics.stop(CaptureMetrics.STAGE_CAPTURE, t0);
+            return 1;
+        }
+
+        int[] local = regionRects;
+        if (local == null)
+            regionRects = local = new int[tiles.maxRectInts()];
+        final long td = metrics.start();
+        final int n = tiles.diff(px, local);
+        metrics.stop(CaptureMetrics.STAGE_DIFF, td);
+        if (n == 0)
+            return 0;
+
+        final int ts = tiles.tileSize();
+        for (int ty = 0; ty < tiles.tilesY(); ty++) {
+            for (int tx = 0; tx < tiles.tilesX(); tx++) {
+                if (!tiles.isDirty(tx, ty))
+                    continue;
+                int x = tx * ts;
+                int y = ty * ts;
+                convertTo(px, out, stride, ox, oy, x, y, Math.min(ts, width - x), Math.min(ts, height - y));
+            }
+        }
+        for (int i = 0; i < n * 4; i += 4) {
+            rects[rectOff + i] = local[i] + ox;
+            rects[rectOff + i + 1] = local[i + 1] + oy;
+            rects[rectOff + i + 2] = local[i + 2];
+            rects[rectOff + i + 3] = local[i + 3];
+        }
+        metrics.stop(CaptureMetrics.STAGE_CAPTURE, t0);
+        return n;
+    }
+
+    // 直近に取り込んだフレームの番号
+    long frameId() {
+        return source.frameId();
+    }
+
+    // どちらもトラッカーを作らずに答える（direct buffer だけのブリッジに prev を持たせない）
+    int dirtyRectCapacity() {
+        return DirtyTileTracker.maxRectInts(width, height, DirtyTileTracker.DEFAULT_TILE_SIZE);
+    }
+
+    int dirtyTileSize() {
+        return DirtyTileTracker.DEFAULT_TILE_SIZE;
+    }
+
+    // width*height の作業用 int[]（foveated など source を通さない読み出しにも使う）
+    // 中身を書き換えられるので、次のスクロールは全面から読み直す
+    int[] scratch() {
+        scrollTarget = null;
+        int[] px = pixelBuf;
+        if (px == null)
+            pixelBuf = px = new int[width * height];
+        return px;
+    }
+
+    long estimateBytes() {
+        final long px = (long) width * height;
+        long bytes = 0;
+        if (pixelBuf != null)
+            bytes += px * 4;
+        if (rgbaBuf != null)
+            bytes += px * 4;
+        if (tiles != null)
+            bytes += px * 4;
+        return bytes;
+    }
+
+    // 作業配列を手放す（次に使うときに取り直す）
+    void release() {
+        pixelBuf = null;
+        rgbaBuf = null;
+        tiles = null;
+        lastDirtyTarget = null;
+        scrollTarget = null;
+        regionTarget = null;
+        regionRects = null;
+    }
+
+    // 幅 w の詰めたレイアウト同士で w*h を変換する（foveated の注視領域・縮小全体など）
+    void convertPacked(int[] src, byte[] dst, int w, int h) {
+        final long t = metrics.start();
+        converter.run(convertTask.set(format, src, dst, w, 0, 0, w), h, w);
+        metrics.stop(CaptureMetrics.STAGE_CONVERT, t);
+    }
+
+    private int[] readPixels() {
+        int[] px = pixelBuf;
+        if (px == null)
+            pixelBuf = px = new int[width * height];
+        return source.read(px) ? px : null;
+    }
+
+    // 取り込み済みのフレームを out に全面書く（スクロールだけならずらして出てきた行だけ）
+    private boolean writeFrame(int fmt, byte[] out) {
+        if (scroll(fmt, out))
+            return true;
+        int[] px = readPixels();
+        if (px == null)
+            return false;
+        convert(fmt, px, out, 0, 0, width, height);
+        remember(out);
+        return true;
+    }
+
+    // 前回 out に全面を書いたフレームと同じ世代なら、out と作業配列を縦にずらし、出てきた行だけ読んで変換する
+    // false のときは呼び出し側で全面を読む
+    private boolean scroll(int fmt, byte[] out) {
+        final long epoch = source.scrollEpoch();
+        if (epoch == 0 || out != scrollTarget || epoch != scrollEpoch)
+            return false;
+        final int dy = source.scrollY() - scrollY;
+        final int eh = Math.abs(dy);
+        if (dy == 0 || eh >= height)
+            return false;
+
+        // 下へスクロール（dy > 0）なら内容は上へ動き、下端に dy 行が出てくる
+        final int[] px = pixelBuf;
+        final int rows = height - eh;
+        final int from = dy > 0 ? dy : 0, to = dy > 0 ? 0 : eh;
+        final int ey = dy > 0 ? rows : 0;
+        final int bpr = width * OutputFormat.bytesPerPixel(fmt);
+        final long t = metrics.start();
+        System.arraycopy(px, from * width, px, to * width, rows * width);
+        System.arraycopy(out, from * bpr, out, to * bpr, rows * bpr);
+        if (!source.readRows(px, ey, eh)) {
+            // ずらした後なので、作業配列も差分の基準も当てにならない
+            scrollTarget = null;
+            if (tiles != null)
+                tiles.invalidate();
+            return false;
+        }
+        metrics.stop(CaptureMetrics.STAGE_READ, t);
+        convert(fmt, px, out, 0, ey, width, eh);
+        scrollY += dy;
+        metrics.count(CaptureMetrics.SCROLL_CAPTURES);
+        return true;
+    }
+
+    // 全面を書き終えた out を次のスクロールの基準にする
+    private void remember(byte[] out) {
+        scrollTarget = out;
+        scrollEpoch = source.scrollEpoch();
+        scrollY = source.scrollY();
+    }
+
+    private DirtyTileTracker tiles() {
+        DirtyTileTracker t = tiles;
+        if (t == null)
+            tiles = t = new DirtyTileTracker(width, height, DirtyTileTracker.DEFAULT_TILE_SIZE);
+        return t;
+    }
+
+    // ARGB(int) → fmt。src/dst とも幅 width の詰めたレイアウト
+    // 全面など大きい範囲は StripedConverter で並列に、タイル程度なら呼び出しスレッドで回す
+    private void convert(int fmt, int[] src, byte[] dst, int x, int y, int w, int h) {
+        final long t = metrics.start();
+        converter.run(convertTask.set(fmt, src, dst, width, x, y, w), h, w);
+        metrics.stop(CaptureMetrics.STAGE_CONVERT, t);
+    }
+
+    // src の (x, y) からの w*h を、幅 stride の dst の (ox + x, oy + y) へ変換する
+    private void convertTo(int[] src, byte[] dst, int stride, int ox, int oy, int x, int y, int w, int h) {
+        final long t = metrics.start();
+        converter.run(convertTask.set(format, src, dst, width, x, y, w).to(stride, ox + x, oy + y), h, w);
+        metrics.stop(CaptureMetrics.STAGE_CONVERT, t);
+    }
+}
@@ -0,0 +1,243 @@
+package webviewcpu;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// capture したフレームと入力をファイルに記録する（Android非依存。読むのは Tools~ の FrameReplayer）
+// 呼び出し側は空きスロットへの arraycopy だけで戻り、XOR/RLE と書き込みは専用スレッドで行う
+// 空きが無ければそのフレームは捨てて数える（capture を待たせない）
+//
+// ファイル形式（リトルエンディアン）
+//   header : int MAGIC, int VERSION, int width, int height
+//   record : byte type, long nanos（記録開始から）, 以下 type ごと
+//     FRAME : long frameId, int len, len バイトの XOR delta（FrameCodec.encodeXor。最初の1枚は 0 との XOR）
+//     INPUT : int kind, int a, float x, float y, int textLen（-1 = null）, textLen バイトの UTF-8
+final class FrameRecorder {
+    static final int MAGIC = 0x52425258; // "XRBR"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+
+    static final byte REC_FRAME = 1;
+    static final byte REC_INPUT = 2;
+
+    // INPUT の kind（a, x, y, text の意味）
+    static final int IN_TAP = 1;            // -, x, y
+    static final int IN_POINTER_DOWN = 2;   // id, x, y
+    static final int IN_POINTER_MOVE = 3;   // id, x, y
+    static final int IN_POINTER_UP = 4;     // id, x, y
+    static final int IN_POINTER_CANCEL = 5;
+    static final int IN_KEY = 6;            // keyCode
+    static final int IN_JS = 7;             // op, start, deleteCount（SPLICE のみ）, arg
+    static final int IN_LOAD_URL = 8;       // -, -, -, url
+    static final int IN_HISTORY = 9;        // step（-1 = 戻る, 1 = 進む）
+
+    private static final int FRAME_SLOTS = 2;
+    private static final int IO_BUFFER_BYTES = 256 * 1024;
+
+    // 記録1件ぶん（フレームはスロットを使い回す）
+    private static final class Entry {
+        byte type;
+        long nanos;
+        long frameId;
+        int[] pixels;
+        int kind, a;
+        float x, y;
+        String text;
+    }
+
+    private static final Entry STOP = new Entry();
+
+    private final int width, height;
+    private final FileChannel channel;
+    private final long startNanos = System.nanoTime();
+    private final ArrayBlockingQueue<Entry> queue = new ArrayBlockingQueue<>(1024);
+    private final ArrayBlockingQueue<Entry> freeFrames = new ArrayBlockingQueue<>(FRAME_SLOTS);
+    private final Thread writer;
+
+    // 以下は writer スレッド専用
+    private int[] prev;
+    private final ByteBuffer delta;
+    private final ByteBuffer io = ByteBuffer.allocateDirect(IO_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+    private final AtomicLong recordedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private volatile IOException failure;
+
+    FrameRecorder(File file, int width, int height) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.delta = ByteBuffer.allocateDirect(FrameCodec.maxDeltaBytes(width * height))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < FRAME_SLOTS; i++) {
+            Entry e = new Entry();
+            e.type = REC_FRAME;
+            e.pixels = new int[width * height];
+            freeFrames.add(e);
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        channel = raf.getChannel();
+        io.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height);
+
+        writer = new Thread(this::writerLoop, "WebViewCpuRecord");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // -------------------------
+    // 記録（どのスレッドからでも）
+    // -------------------------
+
+    // px は ARGB、幅 width の詰めたレイアウト。呼び出し後すぐ使い回してよい
+    void recordFrame(long frameId, int[] px) {
+        Entry e = freeFrames.poll();
+        if (e == null) {
+            droppedFrames.incrementAndGet();
+            return;
+        }
+        System.arraycopy(px, 0, e.pixels, 0, width * height);
+        e.nanos = System.nanoTime() - startNanos;
+        e.frameId = frameId;
+        if (!queue.offer(e)) {
+            freeFrames.offer(e);
+            droppedFrames.incrementAndGet();
+        }
+    }
+
+    void recordInput(int kind, int a, float x, float y, String text) {
+        Entry e = new Entry();
+        e.type = REC_INPUT;
+        e.nanos = System.nanoTime() - startNanos;
+        e.kind = kind;
+        e.a = a;
+        e.x = x;
+        e.y = y;
+        e.text = text;
+        queue.offer(e); // 溢れたら捨てる（入力は少ないので実際には溢れない）
+    }
+
+    long recordedFrames() {
+        return recordedFrames.get();
+    }
+
+    long droppedFrames() {
+        return droppedFrames.get();
+    }
+
+    long writtenBytes() {
+        return writtenBytes.get();
+    }
+
+    // 貯まっている分を書き切ってから閉じる
+    void close() {
+        while (true) {
+            try {
+                queue.put(STOP);
+                break;
+            } catch (InterruptedException ignored) {
+            }
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    // -------------------------
+    // writer スレッド
+    // -------------------------
+
+    private void writerLoop() {
+        try {
+            while (true) {
+                Entry e;
+                try {
+                    e = queue.take();
+                } catch (InterruptedException ignored) {
+                    continue;
+                }
+                if (e == STOP)
+                    break;
+                if (failure != null) {
+                    recycle(e);
+                    continue; // 書けなくなったら中身は捨てて STOP を待つ
+                }
+                try {
+                    if (e.type == REC_FRAME)
+                        writeFrame(e);
+                    else
+                        writeInput(e);
+                } catch (IOException ex) {
+                    failure = ex;
+                }
+                recycle(e);
+            }
+            if (failure == null)
+                flushIo();
+        } catch (IOException ex) {
+            failure = ex;
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void recycle(Entry e) {
+        if (e.type == REC_FRAME)
+            freeFrames.offer(e);
+    }
+
+    private void writeFrame(Entry e) throws IOException {
+        final int n = width * height;
+        int len = FrameCodec.encodeXor(e.pixels, prev, n, delta, 0);
+        if (prev == null)
+            prev = new int[n];
+        System.arraycopy(e.pixels, 0, prev, 0, n);
+
+        ensureIo(1 + 8 + 8 + 4);
+        io.put(REC_FRAME).putLong(e.nanos).putLong(e.frameId).putInt(len);
+        flushIo();
+        ByteBuffer d = delta.duplicate();
+        d.clear();
+        d.limit(len);
+        while (d.hasRemaining())
+            writtenBytes.addAndGet(channel.write(d));
+        recordedFrames.incrementAndGet();
+    }
+
+    private void writeInput(Entry e) throws IOException {
+        byte[] text = e.text != null ? e.text.getBytes(StandardCharsets.UTF_8) : null;
+        final int textLen = text != null ? text.length : -1;
+        final int size = 1 + 8 + 4 * 5 + Math.max(0, textLen);
+        if (size > IO_BUFFER_BYTES)
+            return; // 極端に長い文字列は記録しない
+        ensureIo(size);
+        io.put(REC_INPUT).putLong(e.nanos).putInt(e.kind).putInt(e.a)
+                .putFloat(e.x).putFloat(e.y).putInt(textLen);
+        if (text != null)
+            io.put(text);
+    }
+
+    private void ensureIo(int bytes) throws IOException {
+        if (io.remaining() < bytes)
+            flushIo();
+    }
+
+    private void flushIo() throws IOException {
+        io.flip();
+        while (io.hasRemaining())
+            writtenBytes.addAndGet(channel.write(io));
+        io.clear();
+    }
+}
@@ -0,0 +1,28 @@
+package webviewcpu;
+
+// FramePipeline にフレームを渡す側（Android非依存）
+// 本番は WebViewCpuBridge のリング、PC では Tools~ の SyntheticFrameSource や FrameReplayer
+// 呼ばれるのは capture を呼ぶスレッドだけ
+interface FrameSource {
+    int width();
+
+    int height();
+
+    // 次のフレームを取り込む。新しいフレームがあれば true（無ければ直前のものを持ったまま）
+    boolean acquire();
+
+    // 取り込み済みのフレーム番号（0 = まだ無い・int[] では読めない）
+    long frameId();
+
+    // 取り込み済みのフレームを ARGB で dst（幅 width の詰めたレイアウト）へ。読めなければ false
+    boolean read(int[] dst);
+
+    // 取り込み済みのフレームの [y, y + h) 行だけを dst の同じ位置へ。読めなければ false
+    boolean readRows(int[] dst, int y, int h);
+
+    // 取り込み済みのフレームの世代（0 = 比べられない）と縦スクロール位置（px）
+    // 同じ世代のフレームどうしはスクロール以外の変化が無い：前のフレームを差だけずらせば、出てきた行以外は一致する
+    long scrollEpoch();
+
+    int scrollY();
+}
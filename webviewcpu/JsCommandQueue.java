@@ -0,0 +1,100 @@
+package webviewcpu;
+
+// 1フレーム分の編集コマンドを貯めて、evaluateJavascript 1回ぶんのスクリプトにまとめる（Android非依存）
+// ページ側の処理は WebJs.HELPER に1回だけ入れておき、ここでは短い命令列だけを送る
+//   ["i", text]  カーソル位置に挿入（連続したものは連結）
+//   ["b"]        Backspace
+//   ["e"]        Enter
+//   ["a", text]  末尾に追記
+//   ["v", value] 値を丸ごと置き換え（連続したものは最後だけ）
+//   ["s", start, deleteCount, text, length]
+//                [start, start+deleteCount) を text に置き換え（UTF-16 の位置）。length は置き換え前の長さ（-1 = 確かめない）
+//                続けて打った分（前の text の直後に削除無しで足すもの）は連結
+final class JsCommandQueue {
+    static final char INSERT = 'i';
+    static final char BACKSPACE = 'b';
+    static final char ENTER = 'e';
+    static final char APPEND = 'a';
+    static final char SET_VALUE = 'v';
+    static final char SPLICE = 's';
+
+    private char[] ops = new char[16];
+    private String[] args = new String[16];
+    private int[] nums = new int[16 * 3]; // SPLICE の start, deleteCount, length
+    private int count = 0;
+    private final StringBuilder sb = new StringBuilder(256);
+
+    synchronized void add(char op, String arg) {
+        if (count > 0) {
+            final int last = count - 1;
+            if (op == INSERT && ops[last] == INSERT) {
+                args[last] = args[last] + arg;
+                return;
+            }
+            if (op == SET_VALUE && ops[last] == SET_VALUE) {
+                args[last] = arg;
+                return;
+            }
+        }
+        push(op, arg);
+    }
+
+    synchronized void addSplice(int start, int deleteCount, String text, int length) {
+        if (count > 0 && ops[count - 1] == SPLICE && deleteCount == 0) {
+            final int last = count - 1, n = last * 3;
+            final int end = nums[n] + args[last].length();
+            final int lengthAfter = nums[n + 2] < 0 ? -1 : nums[n + 2] - nums[n + 1] + args[last].length();
+            if (start == end && (length < 0 || length == lengthAfter)) {
+                args[last] = args[last] + text;
+                return;
+            }
+        }
+        push(SPLICE, text);
+        final int n = (count - 1) * 3;
+        nums[n] = start;
+        nums[n + 1] = deleteCount;
+        nums[n + 2] = length;
+    }
+
+    private void push(char op, String arg) {
+        if (count == ops.length) {
+            ops = java.util.Arrays.copyOf(ops, count * 2);
+            args = java.util.Arrays.copyOf(args, count * 2);
+            nums = java.util.Arrays.copyOf(nums, count * 2 * 3);
+        }
+        ops[count] = op;
+        args[count] = arg;
+        count++;
+    }
+
+    synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    // 貯まっている命令を1本のスクリプトにして空にする（空なら null）
+    synchronized String drainScript() {
+        if (count == 0)
+            return null;
+
+        sb.setLength(0);
+        sb.append(WebJs.RUN_PREFIX).append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append("[\"").append(ops[i]).append('"');
+            if (ops[i] == SPLICE) {
+                sb.append(',').append(nums[i * 3]).append(',').append(nums[i * 3 + 1]).append(',');
+                WebJs.quoteInto(sb, args[i]);
+                sb.append(',').append(nums[i * 3 + 2]);
+            } else if (args[i] != null) {
+                sb.append(',');
+                WebJs.quoteInto(sb, args[i]);
+            }
+            sb.append(']');
+            args[i] = null;
+        }
+        sb.append(WebJs.RUN_SUFFIX);
+        count = 0;
+        return sb.toString();
+    }
+}
@@ -0,0 +1,39 @@
+package webviewcpu;
+
+// capture の出力形式（Android非依存）
+// Unity 側はこの名前の TextureFormat でテクスチャを作り、生データとしてそのまま流し込む
+//   RGBA32 : R,G,B,A の 4byte（従来どおり）
+//   RGB565 : 2byte の little-endian ushort（R 5bit が上位）。Bitmap も RGB_565 で描くので描画側の帯域も半分
+//   RGB24  : R,G,B の 3byte（アルファを捨てるだけ）
+//   R8     : 輝度だけの 1byte（文字を読むだけのパネル向け。BT.601 の近似）
+final class OutputFormat {
+    private OutputFormat() {
+    }
+
+    static final int RGBA32 = 0;
+    static final int RGB565 = 1;
+    static final int RGB24 = 2;
+    static final int R8 = 3;
+
+    private static final int[] BYTES_PER_PIXEL = {4, 2, 3, 1};
+    private static final String[] TEXTURE_FORMATS = {"RGBA32", "RGB565", "RGB24", "R8"};
+
+    static boolean isValid(int format) {
+        return format >= 0 && format < BYTES_PER_PIXEL.length;
+    }
+
+    static int bytesPerPixel(int format) {
+        return BYTES_PER_PIXEL[format];
+    }
+
+    // Unity の TextureFormat の名前（Enum.Parse 用）
+    static String textureFormat(int format) {
+        return TEXTURE_FORMATS[format];
+    }
+
+    // Bitmap.getPixels を通さず、Bitmap のメモリをそのまま出力にできるか
+    // （RGBA32 は ARGB_8888、RGB565 は RGB_565 の Bitmap の並びと同じ）
+    static boolean isBitmapLayout(int format) {
+        return format == RGBA32 || format == RGB565;
+    }
+}
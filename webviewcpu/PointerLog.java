@@ -0,0 +1,77 @@
+package webviewcpu;
+
+import java.util.Arrays;
+
+// PointerStream の記録側（Android非依存）。入力スレッドが積み、main looper が面ごと受け取る
+// 配列の2面切り替えで、1サンプルごとの new は無い
+// 溢れたとき move は同じポインタの直前の move に上書きする。down/up/cancel/tap は捨てず、面を広げる
+// （広がるのは main looper が止まっていて flush が来ないときだけ）
+// 溢れても状態の変化が消えないことと1サンプルごとの new が無いことは Tools~ の PointerLogSoak で確かめる
+final class PointerLog {
+    static final byte DOWN = 0, MOVE = 1, UP = 2, CANCEL = 3, TAP = 4;
+    static final int INITIAL_CAPACITY = 256;
+
+    // 記録面。writing の間は lock の下で読み書き、受け取った側は次の swap まで専用
+    static final class Buffer {
+        byte[] type;
+        long[] time;
+        int[] id;
+        float[] x, y;
+        int count;
+
+        Buffer(int capacity) {
+            type = new byte[capacity];
+            time = new long[capacity];
+            id = new int[capacity];
+            x = new float[capacity];
+            y = new float[capacity];
+        }
+
+        private void grow() {
+            final int n = type.length * 2;
+            type = Arrays.copyOf(type, n);
+            time = Arrays.copyOf(time, n);
+            id = Arrays.copyOf(id, n);
+            x = Arrays.copyOf(x, n);
+            y = Arrays.copyOf(y, n);
+        }
+    }
+
+    private final Object lock = new Object();
+    private Buffer writing = new Buffer(INITIAL_CAPACITY);
+    private Buffer reading = new Buffer(INITIAL_CAPACITY);
+
+    // 戻り値：記録前に空だったか（= main looper に flush を頼むべきか）
+    boolean add(int type, int id, float x, float y, long time) {
+        synchronized (lock) {
+            Buffer b = writing;
+            final int n = b.count;
+            if (n == b.type.length) {
+                if (type == MOVE && b.type[n - 1] == MOVE && b.id[n - 1] == id) {
+                    b.time[n - 1] = time;
+                    b.x[n - 1] = x;
+                    b.y[n - 1] = y;
+                    return false;
+                }
+                b.grow();
+            }
+            b.type[n] = (byte) type;
+            b.time[n] = time;
+            b.id[n] = id;
+            b.x[n] = x;
+            b.y[n] = y;
+            b.count = n + 1;
+            return n == 0;
+        }
+    }
+
+    // main looper：貯まった面を受け取る（使い終わったら count = 0 にしておく）
+    Buffer swap() {
+        synchronized (lock) {
+            Buffer b = writing;
+            writing = reading;
+            reading = b;
+            return b;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package webviewcpu;
+
+import android.view.InputDevice;
+import android.view.MotionEvent;
+import android.view.View;
+
+// XRコントローラの高頻度なポインタ入力を貯めて、main looper の1回の番でまとめて流す
+// 連続した move は履歴付きの ACTION_MOVE 1個にまとめる（addBatch）
+// 記録側は PointerLog（1サンプルごとの new は無い）
+// MotionEvent は obtain/recycle でフレームワークのプールから使い回す
+// MotionEvent のポインタ id は 0..31 でなければならないので、呼び出し側の id ではなくスロットの番号を使う
+final class PointerStream {
+    static final int MAX_POINTERS = 10;
+    private static final long TAP_UP_DELAY_MS = 10;
+
+    private final PointerLog log = new PointerLog();
+
+    // 以下は main looper 専用：今押されているポインタ（スロット = 配列位置）
+    private final boolean[] active = new boolean[MAX_POINTERS];
+    private final int[] slotId = new int[MAX_POINTERS];
+    private final float[] curX = new float[MAX_POINTERS];
+    private final float[] curY = new float[MAX_POINTERS];
+    private long downTime;
+
+    private final MotionEvent.PointerProperties[] props = new MotionEvent.PointerProperties[MAX_POINTERS];
+    private final MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[MAX_POINTERS];
+
+    PointerStream() {
+        for (int i = 0; i < MAX_POINTERS; i++) {
+            props[i] = new MotionEvent.PointerProperties();
+            coords[i] = new MotionEvent.PointerCoords();
+        }
+    }
+
+    // -------------------------
+    // 記録（どのスレッドからでも）
+    // -------------------------
+
+    // 戻り値：記録前に空だったか（= main looper に flush を頼むべきか）
+    boolean down(int id, float x, float y, long time) {
+        return log.add(PointerLog.DOWN, id, x, y, time);
+    }
+
+    boolean move(int id, float x, float y, long time) {
+        return log.add(PointerLog.MOVE, id, x, y, time);
+    }
+
+    boolean up(int id, float x, float y, long time) {
+        return log.add(PointerLog.UP, id, x, y, time);
+    }
+
+    boolean cancel(long time) {
+        return log.add(PointerLog.CANCEL, 0, 0, 0, time);
+    }
+
+    // 押して離すだけの独立したジェスチャ（押されているポインタがあれば先に CANCEL で終わらせる）
+    boolean tap(float x, float y, long time) {
+        return log.add(PointerLog.TAP, 0, x, y, time);
+    }
+
+    // -------------------------
+    // 送出（main looper）
+    // -------------------------
+
+    // target が null（WebView が無い）なら貯まった分と押下状態を捨てる
+    void flush(View target) {
+        final PointerLog.Buffer b = log.swap();
+        if (target == null) {
+            b.count = 0;
+            for (int s = 0; s < MAX_POINTERS; s++)
+                active[s] = false;
+            return;
+        }
+
+        final int n = b.count;
+        int i = 0;
+        while (i < n) {
+            switch (b.type[i]) {
+                case PointerLog.DOWN:
+                    onDown(target, b.id[i], b.x[i], b.y[i], b.time[i]);
+                    i++;
+                    break;
+                case PointerLog.UP:
+                    onUp(target, b.id[i], b.x[i], b.y[i], b.time[i]);
+                    i++;
+                    break;
+                case PointerLog.CANCEL:
+                    onCancel(target, b.time[i]);
+                    i++;
+                    break;
+                case PointerLog.TAP:
+                    onTap(target, b.x[i], b.y[i], b.time[i]);
+                    i++;
+                    break;
+                default:
+                    i = onMoves(target, b, i, n);
+                    break;
+            }
+        }
+        b.count = 0;
+    }
+
+    private int slotOf(int id) {
+        for (int s = 0; s < MAX_POINTERS; s++) {
+            if (active[s] && slotId[s] == id)
+                return s;
+        }
+        return -1;
+    }
+
+    private int activeCount() {
+        int c = 0;
+        for (int s = 0; s < MAX_POINTERS; s++) {
+            if (active[s])
+                c++;
+        }
+        return c;
+    }
+
+    // active なスロットを props/coords に詰める。戻り値は個数、target のスロットの添字を indexOut[0] へ
+    private int fillPointers(int targetSlot, int[] indexOut) {
+        int c = 0;
+        for (int s = 0; s < MAX_POINTERS; s++) {
+            if (!active[s])
+                continue;
+            if (s == targetSlot && indexOut != null)
+                indexOut[0] = c;
+            setPointer(c, s, curX[s], curY[s]);
+            c++;
+        }
+        return c;
+    }
+
+    private void setPointer(int c, int id, float x, float y) {
+        props[c].clear();
+        props[c].id = id;
+        props[c].toolType = MotionEvent.TOOL_TYPE_FINGER;
+        coords[c].clear();
+        coords[c].x = x;
+        coords[c].y = y;
+        coords[c].pressure = 1f;
+        coords[c].size = 1f;
+    }
+
+    private final int[] indexTmp = new int[1];
+
+    private void dispatch(View target, int action, long time, int count) {
+        MotionEvent ev = MotionEvent.obtain(downTime, time, action, count, props, coords,
+                0, 0, 1f, 1f, 0, 0, InputDevice.SOURCE_TOUCHSCREEN, 0);
+        target.dispatchTouchEvent(ev);
+        ev.recycle();
+    }
+
+    private void onDown(View target, int id, float x, float y, long time) {
+        if (slotOf(id) >= 0)
+            return; // 二重 down は無視
+        int slot = -1;
+        for (int s = 0; s < MAX_POINTERS; s++) {
+            if (!active[s]) {
+                slot = s;
+                break;
+            }
+        }
+        if (slot < 0)
+            return;
+
+        final boolean first = activeCount() == 0;
+        if (first)
+            downTime = time;
+        active[slot] = true;
+        slotId[slot] = id;
+        curX[slot] = x;
+        curY[slot] = y;
+
+        int count = fillPointers(slot, indexTmp);
+        int action = first
+                ? MotionEvent.ACTION_DOWN
+                : MotionEvent.ACTION_POINTER_DOWN | (indexTmp[0] << MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+        dispatch(target, action, time, count);
+    }
+
+    private void onUp(View target, int id, float x, float y, long time) {
+        int slot = slotOf(id);
+        if (slot < 0)
+            return;
+        curX[slot] = x;
+        curY[slot] = y;
+
+        int count = fillPointers(slot, indexTmp);
+        int action = count == 1
+                ? MotionEvent.ACTION_UP
+                : MotionEvent.ACTION_POINTER_UP | (indexTmp[0] << MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+        dispatch(target, action, time, count);
+        active[slot] = false;
+    }
+
+    private void onCancel(View target, long time) {
+        int count = fillPointers(-1, null);
+        if (count == 0)
+            return;
+        dispatch(target, MotionEvent.ACTION_CANCEL, time, count);
+        for (int s = 0; s < MAX_POINTERS; s++)
+            active[s] = false;
+    }
+
+    // 押されたままのポインタの POINTER_DOWN にならないよう、今のジェスチャは CANCEL で終わらせてから別に流す
+    private void onTap(View target, float x, float y, long time) {
+        onCancel(target, time);
+        downTime = time;
+        setPointer(0, 0, x, y);
+        dispatch(target, MotionEvent.ACTION_DOWN, time, 1);
+        dispatch(target, MotionEvent.ACTION_UP, time + TAP_UP_DELAY_MS, 1);
+    }
+
+    // 連続した move を1個の ACTION_MOVE（古いものは履歴）にまとめる。戻り値は次の位置
+    private int onMoves(View target, PointerLog.Buffer b, int i, int n) {
+        MotionEvent ev = null;
+        for (; i < n && b.type[i] == PointerLog.MOVE; i++) {
+            int slot = slotOf(b.id[i]);
+            if (slot < 0)
+                continue; // down していないポインタ
+            curX[slot] = b.x[i];
+            curY[slot] = b.y[i];
+            int count = fillPointers(-1, null);
+            if (ev == null) {
+                ev = MotionEvent.obtain(downTime, b.time[i], MotionEvent.ACTION_MOVE, count, props, coords,
+                        0, 0, 1f, 1f, 0, 0, InputDevice.SOURCE_TOUCHSCREEN, 0);
+            } else {
+                ev.addBatch(b.time[i], coords, 0);
+            }
+        }
+        if (ev != null) {
+            target.dispatchTouchEvent(ev);
+            ev.recycle();
+        }
+        return i;
+    }
+}
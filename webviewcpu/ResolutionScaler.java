@@ -0,0 +1,76 @@
+package webviewcpu;
+
+// 描画＋変換にかかった時間から、全面フレームを描く解像度の倍率を決める（Android非依存）
+// 予算超えが続いたら1段下げ、余裕のあるフレームがしばらく続いたら1段上げる
+// 下げるのは早く・上げるのは遅く（上げた直後にまた超えてばたつかないよう、余裕の判定は予算の UP_RATIO 倍）
+// update は描く側（main looper か off-main raster のスレッド。同時には呼ばれない）、設定は呼び出し側スレッドから
+final class ResolutionScaler {
+    static final float STEP = 0.125f;
+    static final float MIN_SCALE = 0.25f;
+    private static final int DOWN_FRAMES = 3;    // 予算超えがこれだけ続いたら下げる
+    private static final int UP_FRAMES = 30;     // 余裕がこれだけ続いたら上げる
+    private static final float UP_RATIO = 0.6f;  // 予算のこの割合を下回ったら余裕あり
+
+    private volatile float minScale = 0.5f, maxScale = 1f;
+    private volatile long budgetNanos = 33_000_000L;
+    private volatile float scale = 1f;
+    private int over = 0, under = 0; // update 専用
+
+    // min/max は STEP 刻みに丸め、MIN_SCALE〜1 に収める
+    void configure(float min, float max, long budgetNanos) {
+        max = quantize(clamp(max, MIN_SCALE, 1f));
+        min = quantize(clamp(min, MIN_SCALE, max));
+        this.minScale = min;
+        this.maxScale = max;
+        this.budgetNanos = Math.max(1, budgetNanos);
+        scale = clamp(scale, min, max);
+    }
+
+    void reset() {
+        scale = maxScale;
+    }
+
+    float scale() {
+        return scale;
+    }
+
+    // 1フレーム分の所要時間を渡す。倍率が変わったら true
+    boolean update(long costNanos) {
+        final long budget = budgetNanos;
+        final float s = scale;
+        float next = s;
+        if (costNanos > budget) {
+            under = 0;
+            if (++over >= DOWN_FRAMES) {
+                over = 0;
+                next = Math.max(minScale, s - STEP);
+            }
+        } else if (costNanos < budget * UP_RATIO) {
+            over = 0;
+            if (++under >= UP_FRAMES) {
+                under = 0;
+                next = Math.min(maxScale, s + STEP);
+            }
+        } else {
+            over = under = 0;
+        }
+        next = clamp(next, minScale, maxScale); // configure で範囲が変わった直後
+        if (next == s)
+            return false;
+        scale = next;
+        return true;
+    }
+
+    // size * scale（1px 以上）
+    static int scaled(int size, float scale) {
+        return Math.max(1, Math.round(size * scale));
+    }
+
+    private static float quantize(float v) {
+        return Math.round(v / STEP) * STEP;
+    }
+
+    private static float clamp(float v, float min, float max) {
+        return v < min ? min : (v > max ? max : v);
+    }
+}
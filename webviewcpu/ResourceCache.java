@@ -0,0 +1,895 @@
+package webviewcpu;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// WebView のサブリソース（CSS・JS・画像・フォント）をディスクに持つ LRU キャッシュ（Android非依存）
+// WebView との繋ぎは WebViewCpuBridge の shouldInterceptRequest。ミスのときはここで取りに行き、持てるものは持つ
+//   本体：1件1ファイル（名前は URL の 64bit ハッシュ）
+//   索引：1ファイル（URL・型・大きさ・時刻・検証子だけの小さいバイナリ、古い順）
+//         変わってから INDEX_WRITE_INTERVAL_MS 経つか flush のときに、lock の外で書く
+//   何度も当たる大きめの本体は memory-mapped のまま持ち続け、ファイルを開かずに返す
+// 対象はホスト（末尾一致）と Content-Type（先頭一致）の規則で絞る
+// HTTP のキャッシュの規則に従う（private なキャッシュとして）
+//   新しさ：Cache-Control: max-age → Expires → Last-Modified からの推定（経過の 1/10）。no-cache は毎回検証
+//   古くなったら ETag / Last-Modified で条件付き GET（304 なら持っている本体を返す）
+//   Vary：そのヘッダの値が同じリクエストにだけ返す（* と Cookie は持たない）
+//   Access-Control-Allow-Origin は * か、リクエストの Origin と同じときだけ返す
+// 200 以外・no-store / private・Set-Cookie 付き・検証子も新しさも無いもの・maxEntryBytes 超えは持たない
+// 持たないと分かったものはその接続のまま流して返す（WebView に取り直させない。その URL は覚えておき、次からは WebView に任せる）
+// どのスレッドから呼んでもよい（WebView は shouldInterceptRequest を自前のスレッドから呼ぶ）
+// 手元の HTTP サーバを相手にした計測は Tools~ の ResourceCacheBench
+final class ResourceCache {
+    private static final int INDEX_MAGIC = 0x43525258; // "XRRC"
+    private static final int INDEX_VERSION = 2;
+    private static final String INDEX_NAME = "index";
+    private static final String BODY_SUFFIX = ".r";
+    private static final long INDEX_WRITE_INTERVAL_MS = 30_000;
+    private static final int MAP_MIN_BYTES = 16 * 1024;  // これ未満は map せずに読む（map のほうが高くつく）
+    private static final int MAP_AFTER_HITS = 2;         // この回数当たったら map したまま持つ
+    private static final long MAX_MAPPED_BYTES = 32L * 1024 * 1024;
+    private static final int MAX_UNCACHEABLE = 1024;     // 持たないと分かった URL を覚えておく件数
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    // 既定で持つ Content-Type（HTML・JSON は持たない：ページ本体と API の応答は毎回新しいものを見せる）
+    static final String DEFAULT_TYPES = "text/css,text/javascript,application/javascript,application/x-javascript,"
+            + "application/wasm,image/,font/,application/font,application/x-font";
+
+    // 転送しないリクエストヘッダ（WebView 自身のキャッシュの条件。こちらの検証子と混ざる）
+    private static final String[] DROPPED_REQUEST_HEADERS = {
+            "if-none-match", "if-modified-since", "if-match", "if-unmodified-since", "if-range"};
+
+    // 返す中身。body は先頭から読む（呼び出し側が閉じる）
+    static final class Response {
+        final int status;
+        final String reason;
+        final String mimeType;
+        final String encoding;    // null = 指定なし
+        final String allowOrigin; // Access-Control-Allow-Origin（null = 無し）
+        final InputStream body;
+        final boolean fromCache;
+
+        Response(int status, String reason, String mimeType, String encoding, String allowOrigin,
+                 InputStream body, boolean fromCache) {
+            this.status = status;
+            this.reason = reason;
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.allowOrigin = allowOrigin;
+            this.body = body;
+            this.fromCache = fromCache;
+        }
+    }
+
+    private static final class Entry {
+        final long key;
+        final String url;
+        final String mimeType, encoding, allowOrigin;
+        final String etag;        // null = 無し
+        final long lastModified;  // 0 = 無し
+        final String vary;        // Vary のヘッダ名（小文字、カンマ区切り。"" = 無し）
+        final String varyKey;     // 持ったときのリクエストの、そのヘッダの値
+        final long size;
+        long validatedAt, freshMs; // this の lock の下（304 で進む）
+        int hits;
+        MappedByteBuffer mapped;
+
+        Entry(long key, String url, String mimeType, String encoding, String allowOrigin, String etag,
+              long lastModified, String vary, String varyKey, long size, long validatedAt, long freshMs) {
+            this.key = key;
+            this.url = url;
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.allowOrigin = allowOrigin;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.vary = vary;
+            this.varyKey = varyKey;
+            this.size = size;
+            this.validatedAt = validatedAt;
+            this.freshMs = freshMs;
+        }
+
+        boolean hasValidator() {
+            return etag != null || lastModified != 0;
+        }
+    }
+
+    private final File dir;
+    private final Object indexLock = new Object(); // 索引ファイルを書くのは1人ずつ（this の lock より先に取る）
+    // 以下 this の lock の下
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<Long, Boolean> uncacheable = new LinkedHashMap<Long, Boolean>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > MAX_UNCACHEABLE;
+        }
+    };
+    private long maxBytes;
+    private long usedBytes = 0;
+    private long mappedBytes = 0;
+    private long maxEntryBytes = 4L * 1024 * 1024;
+    private long maxAgeMs = 7L * 24 * 60 * 60 * 1000; // 新しさの上限（検証できても、これより前に確かめたものは捨てる）
+    private String[] hosts = new String[0]; // 空 = すべてのホスト
+    private String[] types = split(DEFAULT_TYPES);
+    private boolean indexDirty = false;
+    private long indexWrittenAt = 0;
+    private long hits = 0, misses = 0, stores = 0, revalidated = 0, bypassed = 0;
+
+    ResourceCache(File dir, long maxBytes) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("cannot create " + dir);
+        this.dir = dir;
+        this.maxBytes = Math.max(0, maxBytes);
+        synchronized (this) {
+            readIndex();
+            removeOrphans();
+            if (trimTo(this.maxBytes))
+                indexDirty = true;
+        }
+    }
+
+    File dir() {
+        return dir;
+    }
+
+    void setMaxBytes(long bytes) {
+        synchronized (this) {
+            maxBytes = Math.max(0, bytes);
+            if (trimTo(maxBytes))
+                indexDirty = true;
+        }
+        maybeWriteIndex();
+    }
+
+    synchronized void setMaxEntryBytes(long bytes) {
+        maxEntryBytes = Math.max(0, bytes);
+    }
+
+    synchronized void setMaxAgeMs(long ms) {
+        maxAgeMs = Math.max(0, ms);
+    }
+
+    // hosts：カンマ区切りのホスト（"example.com" は "a.example.com" にも当たる）。null・空 = すべて
+    // types：カンマ区切りの Content-Type の先頭（"image/" など）。null・空 = DEFAULT_TYPES
+    synchronized void setRules(String hosts, String types) {
+        this.hosts = split(hosts);
+        this.types = split(types == null || types.trim().isEmpty() ? DEFAULT_TYPES : types);
+        uncacheable.clear(); // 型の規則が変わると持てるものも変わる
+    }
+
+    // http(s) で、ホストの規則に当たり、持たないと分かっていない URL か（型は取ってみるまで分からない）
+    boolean accepts(String url) {
+        final String host = hostOf(url);
+        if (host == null)
+            return false;
+        final String[] h;
+        synchronized (this) {
+            if (uncacheable.containsKey(keyOf(url)))
+                return false;
+            h = hosts;
+        }
+        if (h.length == 0)
+            return true;
+        for (String rule : h) {
+            if (host.equals(rule) || host.endsWith("." + rule))
+                return true;
+        }
+        return false;
+    }
+
+    // -------------------------
+    // 読み出し
+    // -------------------------
+
+    // 新しいものを持っていれば中身を返す（無い・古い・このリクエストには返せない・ファイルが消えていたら null）
+    // headers はリクエストヘッダ（Vary・Origin・Range を見る。null 可）
+    Response get(String url, Map<String, String> headers) {
+        final long key = keyOf(url);
+        Entry e;
+        synchronized (this) {
+            e = entries.get(key);
+            if (e == null || !matches(e, url, headers)) {
+                misses++;
+                return null;
+            }
+            final long age = System.currentTimeMillis() - e.validatedAt;
+            if (age > maxAgeMs) {
+                remove(e);
+                indexDirty = true;
+                misses++;
+                return null;
+            }
+            if (age > e.freshMs) {
+                misses++;
+                return null; // 古い：fetch が検証し直す
+            }
+            hits++;
+        }
+        return open(e);
+    }
+
+    // 本体を開く（何度も当たる大きいものは map したまま持つ）。開けなければ捨てて null
+    private Response open(Entry e) {
+        synchronized (this) {
+            e.hits++;
+            if (e.mapped != null)
+                return cached(e, new BufferInputStream(e.mapped.duplicate()));
+        }
+
+        final File file = bodyFile(e.key);
+        try {
+            if (e.size >= MAP_MIN_BYTES && e.hits >= MAP_AFTER_HITS) {
+                MappedByteBuffer mapped;
+                try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                     FileChannel ch = raf.getChannel()) {
+                    mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, e.size);
+                }
+                synchronized (this) {
+                    if (e.mapped == null && entries.get(e.key) == e) {
+                        e.mapped = mapped;
+                        mappedBytes += e.size;
+                        trimMapped();
+                    }
+                }
+                return cached(e, new BufferInputStream(mapped.duplicate()));
+            }
+            return cached(e, new FileInputStream(file));
+        } catch (IOException ex) {
+            synchronized (this) {
+                if (entries.get(e.key) == e) {
+                    remove(e);
+                    indexDirty = true;
+                }
+            }
+            maybeWriteIndex();
+            return null;
+        }
+    }
+
+    private static Response cached(Entry e, InputStream body) {
+        return new Response(200, "OK", e.mimeType, e.encoding, e.allowOrigin, body, true);
+    }
+
+    // このリクエストに e を返してよいか（URL・Vary の値・CORS の Origin）。部分取得には返さない
+    private static boolean matches(Entry e, String url, Map<String, String> headers) {
+        if (!e.url.equals(url) || headerOf(headers, "range") != null)
+            return false;
+        if (!e.varyKey.equals(varyKey(e.vary, headers)))
+            return false;
+        return e.allowOrigin == null || e.allowOrigin.equals("*")
+                || e.allowOrigin.equals(headerOf(headers, "origin"));
+    }
+
+    // -------------------------
+    // 取得（ミスのとき）
+    // -------------------------
+
+    // GET で取りに行き、持てたら（古いものが 304 で確かめられたら）返す
+    // 持たないもの・200 以外・大きすぎるものは、開いた接続の本体をそのまま流して返す（同じ GET を2回させない）
+    // リダイレクトは null（WebResourceResponse は 3xx を返せず、行き先の URL で WebView に取り直させる）
+    // headers は転送するリクエストヘッダ（null 可）
+    Response fetch(String url, Map<String, String> headers) throws IOException {
+        if (headerOf(headers, "range") != null)
+            return null;
+        final long key = keyOf(url);
+        Entry stale;
+        synchronized (this) {
+            stale = entries.get(key);
+            if (stale != null && (!stale.hasValidator() || !matches(stale, url, headers)))
+                stale = null;
+        }
+
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        conn.setReadTimeout(READ_TIMEOUT_MS);
+        conn.setInstanceFollowRedirects(false); // 行き先の本体を元の URL で持たない
+        if (headers != null) {
+            for (Map.Entry<String, String> h : headers.entrySet()) {
+                if (h.getKey() != null && h.getValue() != null && !dropped(h.getKey()))
+                    conn.setRequestProperty(h.getKey(), h.getValue());
+            }
+        }
+        if (stale != null) {
+            if (stale.etag != null)
+                conn.setRequestProperty("If-None-Match", stale.etag);
+            if (stale.lastModified != 0)
+                conn.setIfModifiedSince(stale.lastModified);
+        }
+
+        final int status = conn.getResponseCode();
+        final long now = System.currentTimeMillis();
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED && stale != null) {
+            final long fresh = freshnessMs(conn, now, true);
+            conn.disconnect();
+            synchronized (this) {
+                if (entries.get(key) != stale)
+                    return null; // 取りに行っている間に入れ替わった
+                indexDirty = true;
+                if (fresh == UNCACHEABLE) {
+                    remove(stale);
+                    rememberUncacheable(key);
+                    return null;
+                }
+                stale.validatedAt = now;
+                if (fresh != NO_FRESHNESS)
+                    stale.freshMs = fresh;
+                revalidated++;
+            }
+            maybeWriteIndex();
+            return open(stale);
+        }
+        if (status < 200 || (status >= 300 && status < 400)) {
+            conn.disconnect();
+            return null;
+        }
+        if (status != HttpURLConnection.HTTP_OK)
+            return passThrough(conn, status, conn.getErrorStream()); // 4xx / 5xx はそのまま見せる
+
+        final String contentType = conn.getContentType();
+        final String mime = mimeOf(contentType);
+        final String etag = conn.getHeaderField("ETag");
+        final long lastModified = conn.getLastModified();
+        final String vary = varyNames(conn.getHeaderField("Vary"));
+        final long fresh = freshnessMs(conn, now, etag != null || lastModified != 0);
+        final long limit;
+        final boolean cacheable;
+        synchronized (this) {
+            limit = maxEntryBytes;
+            cacheable = maxBytes > 0 && typeMatches(mime) && vary != null && fresh != UNCACHEABLE
+                    && conn.getHeaderField("Set-Cookie") == null
+                    && conn.getContentLengthLong() <= limit;
+            if (!cacheable) {
+                bypassed++;
+                rememberUncacheable(key);
+            }
+        }
+        if (!cacheable)
+            return passThrough(conn, status, conn.getInputStream());
+
+        // maxEntryBytes まで読んでみて、超えたら持たない
+        final InputStream in = conn.getInputStream();
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(
+                (int) Math.min(Math.max(conn.getContentLengthLong(), 8 * 1024), limit + 1));
+        byte[] chunk = new byte[16 * 1024];
+        int n;
+        while ((n = in.read(chunk)) > 0) {
+            buf.write(chunk, 0, n);
+            if (buf.size() > limit) {
+                synchronized (this) {
+                    bypassed++;
+                    rememberUncacheable(key);
+                }
+                // 読んだ分に続けて残りを流す
+                return passThrough(conn, status, new SequenceInputStream(
+                        new ByteArrayInputStream(buf.toByteArray()), in));
+            }
+        }
+        in.close();
+        final byte[] body = buf.toByteArray();
+        Entry e = new Entry(key, url, mime, charsetOf(contentType), conn.getHeaderField("Access-Control-Allow-Origin"),
+                etag, lastModified, vary, varyKey(vary, headers), body.length, now,
+                fresh == NO_FRESHNESS ? 0 : fresh);
+        store(e, body);
+        // 今のリクエストへの応答なので、Origin が違っても（次からは当たらないだけで）そのまま返す
+        return new Response(status, "OK", e.mimeType, e.encoding, e.allowOrigin, new ByteArrayInputStream(body), false);
+    }
+
+    // 持たずにこの接続の本体をそのまま返す（閉じるのは WebView）
+    private static Response passThrough(HttpURLConnection conn, int status, InputStream body) throws IOException {
+        final String contentType = conn.getContentType();
+        final String reason = conn.getResponseMessage();
+        return new Response(status, reason != null && !reason.isEmpty() ? reason : "OK", mimeOf(contentType),
+                charsetOf(contentType), conn.getHeaderField("Access-Control-Allow-Origin"),
+                body != null ? body : new ByteArrayInputStream(new byte[0]), false);
+    }
+
+    // 本体を一時ファイルに書いてから名前を変えて入れる（書きかけを読ませない）
+    private void store(Entry e, byte[] body) {
+        final File file = bodyFile(e.key);
+        final File tmp = new File(dir, Long.toHexString(e.key) + ".tmp" + Thread.currentThread().getId());
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(body);
+        } catch (IOException ex) {
+            tmp.delete();
+            return;
+        }
+
+        synchronized (this) {
+            Entry old = entries.get(e.key);
+            if (old != null)
+                remove(old);
+            indexDirty = true;
+            if (body.length > maxBytes || !tmp.renameTo(file)) {
+                tmp.delete();
+            } else {
+                entries.put(e.key, e);
+                usedBytes += e.size;
+                stores++;
+                trimTo(maxBytes);
+            }
+        }
+        maybeWriteIndex();
+    }
+
+    // this の lock の下
+    private void rememberUncacheable(long key) {
+        uncacheable.put(key, Boolean.TRUE);
+    }
+
+    // -------------------------
+    // 状態
+    // -------------------------
+
+    synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    synchronized long mappedBytes() {
+        return mappedBytes;
+    }
+
+    synchronized int entryCount() {
+        return entries.size();
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized long revalidated() {
+        return revalidated;
+    }
+
+    synchronized String summary() {
+        return "entries=" + entries.size() + " used=" + usedBytes + "B mapped=" + mappedBytes
+                + "B hits=" + hits + " misses=" + misses + " stores=" + stores + " revalidated=" + revalidated
+                + " bypassed=" + bypassed;
+    }
+
+    // 索引を今書く（参照順の LRU も残る）。パネルを閉じるとき・キャッシュを替えるときに
+    void flush() {
+        synchronized (indexLock) {
+            final byte[] index;
+            synchronized (this) {
+                index = indexBytes();
+                indexDirty = false;
+                indexWrittenAt = System.currentTimeMillis();
+            }
+            writeIndexFile(index);
+        }
+    }
+
+    // すべて消す
+    void clear() {
+        synchronized (this) {
+            for (Entry e : new ArrayList<>(entries.values()))
+                remove(e);
+            uncacheable.clear();
+        }
+        flush();
+    }
+
+    // -------------------------
+    // LRU（this の lock の下）
+    // -------------------------
+
+    private boolean trimTo(long bytes) {
+        boolean removed = false;
+        Iterator<Entry> it = entries.values().iterator();
+        while (usedBytes > bytes && it.hasNext()) {
+            Entry e = it.next();
+            it.remove();
+            drop(e);
+            removed = true;
+        }
+        return removed;
+    }
+
+    // 古い順に map を手放す（ファイルは残す）
+    private void trimMapped() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (mappedBytes > MAX_MAPPED_BYTES && it.hasNext()) {
+            Entry e = it.next();
+            if (e.mapped != null) {
+                e.mapped = null;
+                mappedBytes -= e.size;
+            }
+        }
+    }
+
+    private void remove(Entry e) {
+        entries.remove(e.key);
+        drop(e);
+    }
+
+    // map は GC で外れる（読んでいる途中の複製はそのまま読み切れる）
+    private void drop(Entry e) {
+        usedBytes -= e.size;
+        if (e.mapped != null) {
+            e.mapped = null;
+            mappedBytes -= e.size;
+        }
+        bodyFile(e.key).delete();
+    }
+
+    // -------------------------
+    // 索引（中身は this の lock の下でメモリに作り、ファイルへは lock の外で書く）
+    // -------------------------
+
+    // 変わっていて、前に書いてから INDEX_WRITE_INTERVAL_MS 経っていれば書く（this の lock の外で呼ぶ）
+    private void maybeWriteIndex() {
+        synchronized (this) {
+            if (!indexDirty || System.currentTimeMillis() - indexWrittenAt < INDEX_WRITE_INTERVAL_MS)
+                return;
+        }
+        synchronized (indexLock) {
+            final byte[] index;
+            synchronized (this) {
+                if (!indexDirty)
+                    return; // 待っている間に他の人が書いた
+                index = indexBytes();
+                indexDirty = false;
+                indexWrittenAt = System.currentTimeMillis();
+            }
+            writeIndexFile(index);
+        }
+    }
+
+    // 古い順に並べる（読むときに同じ順で入れれば LRU の順も戻る）
+    private byte[] indexBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entries.size() * 128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(entries.size());
+            for (Entry e : entries.values()) {
+                out.writeLong(e.key);
+                out.writeLong(e.size);
+                out.writeLong(e.validatedAt);
+                out.writeLong(e.freshMs);
+                out.writeLong(e.lastModified);
+                out.writeUTF(e.url);
+                out.writeUTF(e.mimeType);
+                out.writeUTF(e.encoding != null ? e.encoding : "");
+                out.writeUTF(e.allowOrigin != null ? e.allowOrigin : "");
+                out.writeUTF(e.etag != null ? e.etag : "");
+                out.writeUTF(e.vary);
+                out.writeUTF(e.varyKey);
+            }
+        } catch (IOException ignored) {
+            // メモリに書くだけなので起きない
+        }
+        return bytes.toByteArray();
+    }
+
+    // indexLock の下
+    private void writeIndexFile(byte[] index) {
+        final File tmp = new File(dir, INDEX_NAME + ".tmp");
+        try {
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                out.write(index);
+            }
+            if (!tmp.renameTo(new File(dir, INDEX_NAME)))
+                throw new IOException("cannot replace index in " + dir);
+        } catch (IOException e) {
+            // 次の書き込みで取り戻す。開き直したときに索引が古くても、本体の大きさが合わないものは捨てる
+            synchronized (this) {
+                indexDirty = true;
+            }
+        }
+    }
+
+    private void readIndex() {
+        final File file = new File(dir, INDEX_NAME);
+        if (!file.isFile())
+            return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION)
+                return; // 形式が違えば空から（本体は removeOrphans で消える）
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final long key = in.readLong();
+                final long size = in.readLong();
+                final long validatedAt = in.readLong();
+                final long freshMs = in.readLong();
+                final long lastModified = in.readLong();
+                final String url = in.readUTF();
+                final String mime = in.readUTF();
+                final String encoding = in.readUTF();
+                final String allowOrigin = in.readUTF();
+                final String etag = in.readUTF();
+                final String vary = in.readUTF();
+                final String varyKey = in.readUTF();
+                if (bodyFile(key).length() != size || keyOf(url) != key)
+                    continue; // 書きかけ・壊れた本体
+                Entry e = new Entry(key, url, mime, encoding.isEmpty() ? null : encoding,
+                        allowOrigin.isEmpty() ? null : allowOrigin, etag.isEmpty() ? null : etag,
+                        lastModified, vary, varyKey, size, validatedAt, freshMs);
+                if (entries.put(key, e) == null)
+                    usedBytes += size;
+            }
+        } catch (EOFException e) {
+            // 途中まで読めた分は使う
+        } catch (IOException e) {
+            entries.clear();
+            usedBytes = 0;
+        }
+    }
+
+    // 索引に無い本体と一時ファイルを消す
+    private void removeOrphans() {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        HashSet<String> known = new HashSet<>();
+        for (Entry e : entries.values())
+            known.add(bodyFile(e.key).getName());
+        for (File f : files) {
+            final String name = f.getName();
+            if (!name.equals(INDEX_NAME) && !known.contains(name))
+                f.delete();
+        }
+    }
+
+    private File bodyFile(long key) {
+        return new File(dir, Long.toHexString(key) + BODY_SUFFIX);
+    }
+
+    // -------------------------
+    // 規則・解析
+    // -------------------------
+
+    private static final long UNCACHEABLE = -2;  // 持たない
+    private static final long NO_FRESHNESS = -1; // 新しさの指定が無い（検証子があれば毎回確かめる）
+
+    private boolean typeMatches(String mime) {
+        if (mime == null)
+            return false;
+        for (String t : types) {
+            if (mime.startsWith(t))
+                return true;
+        }
+        return false;
+    }
+
+    // 応答が新しいままでいられる時間（ms、maxAgeMs まで）か UNCACHEABLE / NO_FRESHNESS
+    // hasValidator：ETag か Last-Modified があるか（無ければ、すぐ古くなるものは持てない）
+    private long freshnessMs(HttpURLConnection conn, long now, boolean hasValidator) {
+        final String cc = conn.getHeaderField("Cache-Control");
+        if (hasDirective(cc, "no-store") || hasDirective(cc, "private"))
+            return UNCACHEABLE;
+        final long date = conn.getDate() != 0 ? conn.getDate() : now;
+        long fresh;
+        if (hasDirective(cc, "no-cache")) {
+            fresh = 0;
+        } else if (directiveSeconds(cc, "max-age") >= 0) {
+            fresh = directiveSeconds(cc, "max-age") * 1000;
+        } else if (conn.getHeaderField("Expires") != null) {
+            fresh = Math.max(0, conn.getExpiration() - date); // 読めない Expires（"0" など）はもう古い
+        } else if (conn.getLastModified() != 0) {
+            fresh = Math.max(0, (date - conn.getLastModified()) / 10);
+        } else {
+            return hasValidator ? NO_FRESHNESS : UNCACHEABLE;
+        }
+        final long age = directiveSeconds(conn.getHeaderField("Age"), null);
+        if (age > 0)
+            fresh = Math.max(0, fresh - age * 1000);
+        if (fresh == 0 && !hasValidator)
+            return UNCACHEABLE;
+        synchronized (this) {
+            return Math.min(fresh, maxAgeMs);
+        }
+    }
+
+    // Cache-Control に name の指示があるか（"no-cache" にも "no-cache=\"Set-Cookie\"" にも当たる）
+    private static boolean hasDirective(String cacheControl, String name) {
+        if (cacheControl == null)
+            return false;
+        for (String d : cacheControl.split(",")) {
+            d = d.trim().toLowerCase(Locale.ROOT);
+            if (d.equals(name) || d.startsWith(name + "="))
+                return true;
+        }
+        return false;
+    }
+
+    // "max-age=60" の 60（無い・読めなければ -1）。name が null なら値そのもの（Age ヘッダ）
+    private static long directiveSeconds(String value, String name) {
+        if (value == null)
+            return -1;
+        for (String d : value.split(",")) {
+            d = d.trim().toLowerCase(Locale.ROOT);
+            String v;
+            if (name == null)
+                v = d;
+            else if (d.startsWith(name + "="))
+                v = d.substring(name.length() + 1).trim();
+            else
+                continue;
+            if (v.length() >= 2 && v.startsWith("\"") && v.endsWith("\""))
+                v = v.substring(1, v.length() - 1);
+            try {
+                return Math.max(0, Long.parseLong(v));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    // Vary のヘッダ名（小文字、カンマ区切り）。無ければ ""、持てない（* / Cookie）なら null
+    private static String varyNames(String vary) {
+        if (vary == null)
+            return "";
+        StringBuilder sb = new StringBuilder();
+        for (String name : split(vary)) {
+            if (name.equals("*") || name.equals("cookie"))
+                return null;
+            if (name.equals("accept-encoding"))
+                continue; // 展開は HttpURLConnection がするので、返す中身は同じ
+            if (sb.length() > 0)
+                sb.append(',');
+            sb.append(name);
+        }
+        return sb.toString();
+    }
+
+    // Vary のヘッダについて、このリクエストの値を並べたもの
+    private static String varyKey(String vary, Map<String, String> headers) {
+        if (vary.isEmpty())
+            return "";
+        StringBuilder sb = new StringBuilder();
+        for (String name : vary.split(",")) {
+            final String v = headerOf(headers, name);
+            sb.append(name).append('=').append(v != null ? v : "").append('\n');
+        }
+        return sb.toString();
+    }
+
+    // 大文字小文字を区別せずにヘッダを引く（WebView のヘッダ名の書き方は決まっていない）
+    private static String headerOf(Map<String, String> headers, String name) {
+        if (headers == null)
+            return null;
+        for (Map.Entry<String, String> h : headers.entrySet()) {
+            if (h.getKey() != null && h.getKey().equalsIgnoreCase(name))
+                return h.getValue();
+        }
+        return null;
+    }
+
+    private static boolean dropped(String header) {
+        for (String d : DROPPED_REQUEST_HEADERS) {
+            if (header.equalsIgnoreCase(d))
+                return true;
+        }
+        return false;
+    }
+
+    // URL の 64bit FNV-1a（本体のファイル名と索引のキー）
+    static long keyOf(String url) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            h ^= url.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // "text/css; charset=utf-8" → "text/css"
+    static String mimeOf(String contentType) {
+        if (contentType == null)
+            return "application/octet-stream";
+        final int semi = contentType.indexOf(';');
+        return (semi >= 0 ? contentType.substring(0, semi) : contentType).trim().toLowerCase(Locale.ROOT);
+    }
+
+    // "text/css; charset=utf-8" → "utf-8"（無ければ null）
+    static String charsetOf(String contentType) {
+        if (contentType == null)
+            return null;
+        final int i = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (i < 0)
+            return null;
+        String cs = contentType.substring(i + 8).trim();
+        final int semi = cs.indexOf(';');
+        if (semi >= 0)
+            cs = cs.substring(0, semi).trim();
+        if (cs.length() >= 2 && cs.startsWith("\"") && cs.endsWith("\""))
+            cs = cs.substring(1, cs.length() - 1);
+        return cs.isEmpty() ? null : cs;
+    }
+
+    // http(s) の URL のホスト（小文字、それ以外は null）
+    static String hostOf(String url) {
+        final int scheme = url.indexOf("://");
+        if (scheme < 0)
+            return null;
+        final String s = url.substring(0, scheme).toLowerCase(Locale.ROOT);
+        if (!s.equals("http") && !s.equals("https"))
+            return null;
+        int start = scheme + 3;
+        int end = start;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0)
+            end++;
+        String host = url.substring(start, end);
+        final int at = host.lastIndexOf('@');
+        if (at >= 0)
+            host = host.substring(at + 1);
+        final int colon = host.lastIndexOf(':');
+        if (colon >= 0 && host.indexOf(']') < colon)
+            host = host.substring(0, colon);
+        return host.isEmpty() ? null : host.toLowerCase(Locale.ROOT);
+    }
+
+    private static String[] split(String csv) {
+        if (csv == null)
+            return new String[0];
+        List<String> out = new ArrayList<>();
+        for (String s : csv.split(",")) {
+            s = s.trim().toLowerCase(Locale.ROOT);
+            if (!s.isEmpty())
+                out.add(s);
+        }
+        return out.toArray(new String[0]);
+    }
+
+    // map した本体を先頭から読む（複製ごとに位置を持つので、同じ本体を同時に何本読んでもよい）
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        BufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buf.hasRemaining())
+                return -1;
+            final int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+}
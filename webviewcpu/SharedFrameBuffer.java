@@ -0,0 +1,123 @@
+package webviewcpu;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Unity と共有する1枚の direct ByteBuffer。フレームを JNI 呼び出し無しで渡す（Android非依存）
+// 書くのは1本のスレッドだけ（WebViewCpuBridge の publish スレッド）、読む側はメモリを見るだけ（seqlock）
+//   [0, HEADER_BYTES)        ヘッダ（native order）
+//   [HEADER_BYTES, +frame)   width*height*bpp のフレーム（captureInto と同じ並び）
+// ヘッダ
+//    0 MAGIC   4 SEQ（奇数 = 書いている途中）  8 WIDTH  12 HEIGHT  16 FORMAT（OutputFormat）
+//   20 FRAME_W 24 FRAME_H（動的解像度のときフレームが入っている左上の大きさ）
+//   28 DIRTY_X 32 DIRTY_Y 36 DIRTY_W 40 DIRTY_H（SEQ - 2 の内容から変わった範囲）
+//   48 FRAME_ID（long）
+// 読む側：SEQ を読む → 奇数か前回と同じなら何もしない → ヘッダと本体を写す → SEQ を読み直し、違えば捨てる
+//   前回読んだ SEQ + 2 なら DIRTY の範囲だけ写せばよい（飛んでいたら全面）
+// 書き手と読み手を別スレッドで回して破れを数えるのは Tools~ の SharedFrameBufferSoak
+final class SharedFrameBuffer {
+    static final int MAGIC = 0x46535258; // "XRSF"
+    static final int HEADER_BYTES = 64;
+    static final int OFF_SEQ = 4;
+    static final int OFF_WIDTH = 8;
+    static final int OFF_HEIGHT = 12;
+    static final int OFF_FORMAT = 16;
+    static final int OFF_FRAME_W = 20;
+    static final int OFF_FRAME_H = 24;
+    static final int OFF_DIRTY_X = 28;
+    static final int OFF_DIRTY_Y = 32;
+    static final int OFF_DIRTY_W = 36;
+    static final int OFF_DIRTY_H = 40;
+    static final int OFF_FRAME_ID = 48;
+
+    private final ByteBuffer buf;
+    private final ByteBuffer body; // buf の本体部分（position を動かすのは書き手だけ）
+    private final int width, height, format, bpp;
+    private final byte[] staging;  // 書き手が変換した直近のフレーム（captureDirtyInto の出力先）
+    private final int[] rects;
+    private int seq = 0;
+
+    SharedFrameBuffer(int width, int height, int format, int rectCapacity) {
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.bpp = OutputFormat.bytesPerPixel(format);
+        buf = ByteBuffer.allocateDirect(HEADER_BYTES + width * height * bpp).order(ByteOrder.nativeOrder());
+        buf.position(HEADER_BYTES);
+        body = buf.slice();
+        buf.position(0);
+        staging = new byte[width * height * bpp];
+        rects = new int[rectCapacity];
+        buf.putInt(0, MAGIC);
+        buf.putInt(OFF_SEQ, 0);
+        buf.putInt(OFF_WIDTH, width);
+        buf.putInt(OFF_HEIGHT, height);
+        buf.putInt(OFF_FORMAT, format);
+    }
+
+    ByteBuffer buffer() {
+        return buf;
+    }
+
+    int format() {
+        return format;
+    }
+
+    byte[] staging() {
+        return staging;
+    }
+
+    int[] rects() {
+        return rects;
+    }
+
+    // staging の rects[0..n) の範囲を本体へ写して公開する（n は矩形数、1以上）
+    void publish(int n, int frameW, int frameH, long frameId) {
+        int x0 = width, y0 = height, x1 = 0, y1 = 0;
+        for (int i = 0; i < n * 4; i += 4) {
+            x0 = Math.min(x0, rects[i]);
+            y0 = Math.min(y0, rects[i + 1]);
+            x1 = Math.max(x1, rects[i] + rects[i + 2]);
+            y1 = Math.max(y1, rects[i + 1] + rects[i + 3]);
+        }
+        if (x1 <= x0 || y1 <= y0)
+            return;
+
+        buf.putInt(OFF_SEQ, ++seq); // 奇数：書いている途中
+        fence();
+        final int rowBytes = (x1 - x0) * bpp;
+        for (int y = y0; y < y1; y++) {
+            final int o = (y * width + x0) * bpp;
+            body.position(o);
+            body.put(staging, o, rowBytes);
+        }
+        buf.putInt(OFF_FRAME_W, frameW);
+        buf.putInt(OFF_FRAME_H, frameH);
+        buf.putInt(OFF_DIRTY_X, x0);
+        buf.putInt(OFF_DIRTY_Y, y0);
+        buf.putInt(OFF_DIRTY_W, x1 - x0);
+        buf.putInt(OFF_DIRTY_H, y1 - y0);
+        buf.putLong(OFF_FRAME_ID, frameId);
+        fence();
+        buf.putInt(OFF_SEQ, ++seq); // 偶数：読んでよい
+    }
+
+    // 全面を1つの矩形として公開する
+    void publishFull(int frameW, int frameH, long frameId) {
+        rects[0] = 0;
+        rects[1] = 0;
+        rects[2] = width;
+        rects[3] = height;
+        publish(1, frameW, frameH, frameId);
+    }
+
+    private static volatile int fenceSink;
+
+    // volatile の書き込み→読み出し（Java 8 / 古い Android でも使える full fence の代わり）
+    // 本体への書き込みが SEQ の前後を越えて見えないようにする
+    private static void fence() {
+        fenceSink = 0;
+        if (fenceSink != 0)
+            throw new IllegalStateException();
+    }
+}
@@ -0,0 +1,133 @@
+package webviewcpu;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// URL ごとの圧縮済みフレーム（FrameCodec）を持つ LRU キャッシュ（Android非依存）
+// 中身は direct ByteBuffer なので Java ヒープには載らない。バイト数の予算を超えたら古い順に捨てる
+// どのスレッドから呼んでもよい
+final class SnapshotCache {
+    private final LinkedHashMap<String, ByteBuffer> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long budgetBytes;
+    private long usedBytes = 0;
+
+    // -------------------------
+    // 圧縮（呼び出し側は画素を raw に写すだけ。RLE は1本の作業スレッドで）
+    // raw は全パネルで1枚を使い回す（使用中なら1回きりのものを作って捨てる）
+    // 圧縮先の作業バッファは作業スレッド専用で、続けて来た分を圧縮し終えたら手放す
+    // -------------------------
+    private static final long ENCODER_KEEP_ALIVE_SECONDS = 10;
+    private ByteBuffer spareRaw; // 以下 this の lock の下
+    private ThreadPoolExecutor encoder;
+    private ByteBuffer encodeScratch; // 作業スレッド専用
+    private final AtomicInteger pendingEncodes = new AtomicInteger();
+
+    SnapshotCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    // パネルの大きさ違いは別物として持つ
+    static String key(int w, int h, String url) {
+        return w + "x" + h + " " + url;
+    }
+
+    synchronized void put(String key, ByteBuffer encoded) {
+        if (encoded.capacity() > budgetBytes)
+            return;
+        ByteBuffer old = entries.put(key, encoded);
+        if (old != null)
+            usedBytes -= old.capacity();
+        usedBytes += encoded.capacity();
+        trimTo(budgetBytes);
+    }
+
+    synchronized ByteBuffer get(String key) {
+        return entries.get(key);
+    }
+
+    synchronized void setBudgetBytes(long bytes) {
+        budgetBytes = Math.max(0, bytes);
+        trimTo(budgetBytes);
+    }
+
+    synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    // 戻り値は手放したバイト数
+    synchronized long clear() {
+        long freed = usedBytes;
+        entries.clear();
+        usedBytes = 0;
+        if (spareRaw != null) {
+            freed += spareRaw.capacity();
+            spareRaw = null;
+        }
+        return freed;
+    }
+
+    // bytes 以上の raw（native order、position 0・limit bytes）。使い終わったら giveRaw で返す
+    synchronized ByteBuffer takeRaw(int bytes) {
+        ByteBuffer b = spareRaw;
+        if (b != null && b.capacity() >= bytes)
+            spareRaw = null;
+        else
+            b = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        b.clear();
+        b.limit(bytes);
+        return b;
+    }
+
+    // 手元に残すのは大きい方の1枚だけ
+    synchronized void giveRaw(ByteBuffer raw) {
+        if (spareRaw == null || raw.capacity() > spareRaw.capacity())
+            spareRaw = raw;
+    }
+
+    // raw（takeRaw で受け取り、w*h*4 の ARGB を写したもの）を作業スレッドで圧縮して key に入れる
+    // raw はこちらが預かり、圧縮し終えたら giveRaw する
+    void putAsync(String key, ByteBuffer raw, int w, int h) {
+        pendingEncodes.incrementAndGet();
+        encoder().execute(() -> {
+            try {
+                final int cap = FrameCodec.maxEncodedBytes(w, h);
+                if (encodeScratch == null || encodeScratch.capacity() < cap)
+                    encodeScratch = ByteBuffer.allocateDirect(cap).order(ByteOrder.nativeOrder());
+                final int len = FrameCodec.encode(raw, w, h, encodeScratch);
+                put(key, FrameCodec.copyOf(encodeScratch, len));
+            } finally {
+                giveRaw(raw);
+                if (pendingEncodes.decrementAndGet() == 0)
+                    encodeScratch = null;
+            }
+        });
+    }
+
+    // 使っていない間はスレッドを残さない
+    private synchronized ThreadPoolExecutor encoder() {
+        if (encoder == null) {
+            encoder = new ThreadPoolExecutor(0, 1, ENCODER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "WebViewCpuSnapshot");
+                        t.setDaemon(true);
+                        return t;
+                    });
+        }
+        return encoder;
+    }
+
+    private void trimTo(long bytes) {
+        Iterator<Map.Entry<String, ByteBuffer>> it = entries.entrySet().iterator();
+        while (usedBytes > bytes && it.hasNext()) {
+            usedBytes -= it.next().getValue().capacity();
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package webviewcpu;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// フレームを行ストライプに分けて、固定スレッド数で並列に処理する（Android非依存）
+// ジョブごとの new は無し。小さいフレームは呼び出しスレッドだけで回す
+// 変換の中身は StripeTask 側に置くので、出力形式・切り出し・縮小などにもそのまま使える
+final class StripedConverter {
+
+    interface StripeTask {
+        // [rowStart, rowEnd) を処理する。複数スレッドから同時に呼ばれる
+        void run(int rowStart, int rowEnd);
+    }
+
+    // これ未満のピクセル数はスレッドを起こすより1本で回したほうが速い
+    static final int MIN_PARALLEL_PIXELS = 256 * 256;
+    private static final int STRIPES_PER_THREAD = 4;
+    private static final int MIN_STRIPE_ROWS = 16;
+
+    private static StripedConverter shared;
+
+    // ブリッジ間で共有する既定インスタンス（呼び出しスレッド + 最大3本）
+    static synchronized StripedConverter shared() {
+        if (shared == null) {
+            int cpus = Runtime.getRuntime().availableProcessors();
+            shared = new StripedConverter(Math.max(0, Math.min(cpus - 1, 3)));
+        }
+        return shared;
+    }
+
+    private final Thread[] workers;
+    private final Object jobLock = new Object(); // 1ジョブずつ
+    private final Object lock = new Object();    // 起床・完了通知
+
+    // 以下は lock の下で書いて generation を進めてから読む
+    private StripeTask task;
+    private int rows;
+    private int stripeRows;
+    private int stripeCount;
+    private int generation;
+    private boolean shutdown;
+
+    // 上位32bit = generation、下位32bit = 次に取るストライプ
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicInteger doneStripes = new AtomicInteger();
+
+    StripedConverter(int workerThreads) {
+        workers = new Thread[workerThreads];
+        for (int i = 0; i < workerThreads; i++) {
+            Thread t = new Thread(this::workerLoop, "WebViewCpuConvert-" + i);
+            t.setDaemon(true);
+            workers[i] = t;
+            t.start();
+        }
+    }
+
+    int parallelism() {
+        return workers.length + 1;
+    }
+
+    // rows 行 × rowPixels の処理を実行して、終わるまで戻らない
+    void run(StripeTask t, int rows, int rowPixels) {
+        if (rows <= 0)
+            return;
+        if (workers.length == 0 || (long) rows * rowPixels < MIN_PARALLEL_PIXELS) {
+            t.run(0, rows);
+            return;
+        }
+
+        synchronized (jobLock) {
+            int sr = Math.max(MIN_STRIPE_ROWS, rows / (parallelism() * STRIPES_PER_THREAD));
+            int count = (rows + sr - 1) / sr;
+            int gen;
+
+            synchronized (lock) {
+                task = t;
+                this.rows = rows;
+                stripeRows = sr;
+                stripeCount = count;
+                gen = ++generation;
+                doneStripes.set(0);
+                cursor.set((long) gen << 32);
+                lock.notifyAll();
+            }
+
+            drain(gen, t, rows, sr, count);
+
+            synchronized (lock) {
+                while (doneStripes.get() < count) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                task = null;
+            }
+        }
+    }
+
+    void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            lock.notifyAll();
+        }
+    }
+
+    private void workerLoop() {
+        int seen = 0;
+        while (true) {
+            StripeTask t;
+            int r, sr, count, gen;
+            synchronized (lock) {
+                while (generation == seen && !shutdown) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                if (shutdown)
+                    return;
+                seen = gen = generation;
+                t = task;
+                r = rows;
+                sr = stripeRows;
+                count = stripeCount;
+            }
+            if (t != null)
+                drain(gen, t, r, sr, count);
+        }
+    }
+
+    // 自分の generation のストライプが残っている間だけ取り続ける
+    private void drain(int gen, StripeTask t, int rows, int sr, int count) {
+        while (true) {
+            long c = cursor.get();
+            int idx = (int) c;
+            if ((int) (c >>> 32) != gen || idx >= count)
+                return;
+            if (!cursor.compareAndSet(c, c + 1))
+                continue;
+
+            int start = idx * sr;
+            t.run(start, Math.min(start + sr, rows));
+
+            if (doneStripes.incrementAndGet() == count) {
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    // -------------------------
+    // Kernels
+    // -------------------------
+
+    // ARGB(int) → RGBA(byte)。stride はどちらもピクセル単位
+    static void argbToRgba(int[] src, int srcOffset, int srcStride,
+                           byte[] dst, int dstOffset, int dstStride,
+                           int w, int h) {
+        for (int row = 0; row < h; row++) {
+            int i = srcOffset + row * srcStride;
+            int o = (dstOffset + row * dstStride) * 4;
+            final int end = i + w;
+            for (; i < end; i++, o += 4) {
+                final int c = src[i]; // ARGB
+                dst[o] = (byte) (c >> 16);
+                dst[o + 1] = (byte) (c >> 8);
+                dst[o + 2] = (byte) c;
+                dst[o + 3] = (byte) (c >>> 24);
+            }
+        }
+    }
+
+    // ARGB(int) → RGB565（2byte, little-endian）
+    static void argbToRgb565(int[] src, int srcOffset, int srcStride,
+                             byte[] dst, int dstOffset, int dstStride,
+                             int w, int h) {
+        for (int row = 0; row < h; row++) {
+            int i = srcOffset + row * srcStride;
+            int o = (dstOffset + row * dstStride) * 2;
+            final int end = i + w;
+            for (; i < end; i++, o += 2) {
+                final int c = src[i];
+                final int v = ((c >> 8) & 0xF800) | ((c >> 5) & 0x07E0) | ((c >> 3) & 0x001F);
+                dst[o] = (byte) v;
+                dst[o + 1] = (byte) (v >> 8);
+            }
+        }
+    }
+
+    // ARGB(int) → RGB(3byte)
+    static void argbToRgb24(int[] src, int srcOffset, int srcStride,
+                            byte[] dst, int dstOffset, int dstStride,
+                            int w, int h) {
+        for (int row = 0; row < h; row++) {
+            int i = srcOffset + row * srcStride;
+            int o = (dstOffset + row * dstStride) * 3;
+            final int end = i + w;
+            for (; i < end; i++, o += 3) {
+                final int c = src[i];
+                dst[o] = (byte) (c >> 16);
+                dst[o + 1] = (byte) (c >> 8);
+                dst[o + 2] = (byte) c;
+            }
+        }
+    }
+
+    // ARGB(int) → 輝度(1byte)。Y ≒ (77R + 150G + 29B) / 256
+    static void argbToLuma(int[] src, int srcOffset, int srcStride,
+                           byte[] dst, int dstOffset, int dstStride,
+                           int w, int h) {
+        for (int row = 0; row < h; row++) {
+            int i = srcOffset + row * srcStride;
+            int o = dstOffset + row * dstStride;
+            final int end = i + w;
+            for (; i < end; i++, o++) {
+                final int c = src[i];
+                dst[o] = (byte) ((77 * ((c >> 16) & 0xFF) + 150 * ((c >> 8) & 0xFF) + 29 * (c & 0xFF)) >> 8);
+            }
+        }
+    }
+
+    // ARGB → OutputFormat の変換をストライプ実行するための使い回し用タスク
+    static final class ArgbConvert implements StripeTask {
+        private int format = OutputFormat.RGBA32;
+        private int[] src;
+        private byte[] dst;
+        private int stride, x, y, w;
+        private int dstStride, dstX, dstY;
+
+        // src/dst とも幅 stride の詰めたレイアウトで、(x, y) から幅 w を変換する
+        ArgbConvert set(int format, int[] src, byte[] dst, int stride, int x, int y, int w) {
+            this.format = format;
+            this.src = src;
+            this.dst = dst;
+            this.stride = stride;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            dstStride = stride;
+            dstX = x;
+            dstY = y;
+            return this;
+        }
+
+        // set の後に呼ぶ：dst は幅 dstStride で、(dstX, dstY) に書く（atlas の中のパネルなど）
+        ArgbConvert to(int dstStride, int dstX, int dstY) {
+            this.dstStride = dstStride;
+            this.dstX = dstX;
+            this.dstY = dstY;
+            return this;
+        }
+
+        @Override
+        public void run(int rowStart, int rowEnd) {
+            final int off = (y + rowStart) * stride + x;
+            final int dOff = (dstY + rowStart) * dstStride + dstX;
+            final int h = rowEnd - rowStart;
+            switch (format) {
+                case OutputFormat.RGB565:
+                    argbToRgb565(src, off, stride, dst, dOff, dstStride, w, h);
+                    break;
+                case OutputFormat.RGB24:
+                    argbToRgb24(src, off, stride, dst, dOff, dstStride, w, h);
+                    break;
+                case OutputFormat.R8:
+                    argbToLuma(src, off, stride, dst, dOff, dstStride, w, h);
+                    break;
+                default:
+                    argbToRgba(src, off, stride, dst, dOff, dstStride, w, h);
+                    break;
+            }
+        }
+    }
+}
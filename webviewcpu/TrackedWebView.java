@@ -0,0 +1,65 @@
+package webviewcpu;
+
+import android.content.Context;
+import android.webkit.WebView;
+
+// 画面に attach しない WebView は invalidate がどこにも届かないので、
+// 自前で拾って「描き直しが必要か」の判定に使う
+final class TrackedWebView extends WebView {
+
+    interface Listener {
+        void onDamage();
+    }
+
+    private Listener listener;
+
+    TrackedWebView(Context context) {
+        super(context);
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    private void damage() {
+        Listener l = listener;
+        if (l != null)
+            l.onDamage();
+    }
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        damage();
+    }
+
+    @Override
+    public void invalidate(int l, int t, int r, int b) {
+        super.invalidate(l, t, r, b);
+        damage();
+    }
+
+    @Override
+    public void postInvalidate() {
+        super.postInvalidate();
+        damage();
+    }
+
+    @Override
+    public void postInvalidateDelayed(long delayMilliseconds) {
+        super.postInvalidateDelayed(delayMilliseconds);
+        damage();
+    }
+
+    @Override
+    public void postInvalidateOnAnimation() {
+        super.postInvalidateOnAnimation();
+        damage();
+    }
+
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        damage();
+    }
+}
@@ -0,0 +1,244 @@
+package webviewcpu;
+
+import java.security.SecureRandom;
+
+// evaluateJavascript に渡すスクリプトの組み立て（Android非依存）
+// ブリッジから切り離しておくと、入力まわりの文字列生成を素のJVMで計測できる
+final class WebJs {
+    private WebJs() {
+    }
+
+    // JSの文字列リテラルにする（JSONObject.quote 相当 + U+2028/2029 もエスケープ）
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder((s != null ? s.length() : 0) + 8);
+        quoteInto(sb, s);
+        return sb.toString();
+    }
+
+    static void quoteInto(StringBuilder sb, String s) {
+        if (s == null) {
+            sb.append("\"\"");
+            return;
+        }
+        final int n = s.length();
+        sb.append('"');
+        char prev = 0;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    sb.append('\\').append(c);
+                    break;
+                case '/':
+                    // "</script>" 対策（JSONObject.quote と同じ）
+                    if (prev == '<')
+                        sb.append('\\');
+                    sb.append(c);
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        sb.append("\\u");
+                        String hex = Integer.toHexString(c);
+                        for (int k = hex.length(); k < 4; k++)
+                            sb.append('0');
+                        sb.append(hex);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+            prev = c;
+        }
+        sb.append('"');
+    }
+
+    // -------------------------
+    // ページ側ヘルパ（JsCommandQueue の命令列を実行する）
+    // ブリッジが evaluateJavascript でメインフレームにだけ入れる（helper(token)。ページから取り寄せる口は無い）
+    // 入れる先はプロセスごとに決める名前の、書き換え・削除できない window のプロパティ
+    // 名前は入れた後ならページからも見えるが、入る前に偽物を置いておくことも、入った後に差し替えることもできない
+    // __xrbHost への通知には token を付ける（iframe やページ自身の呼び出しには無いので、ブリッジ側で捨てる）
+    // 入る前にメインフレームのページが __xrbHost を差し替えていれば token は漏れるので、受け取る側は形と大きさも確かめる
+    // -------------------------
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    static final String HOST_NAME = "__xrbHost";
+    static final String API_NAME = "__xrb" + newToken();
+
+    // 入る前（読み込みの最初、まだ入力欄も無い）の命令は捨てる
+    static final String RUN_PREFIX = "window." + API_NAME + "&&window." + API_NAME + ".run(";
+    static final String RUN_SUFFIX = "]);";
+
+    static final int SCROLL_PUSH_MS = 100;
+    static final String NO_FOCUS_JSON = "{\"hasFocus\":false}";
+
+    static String newToken() {
+        return Long.toString(RANDOM.nextLong() & Long.MAX_VALUE, 36);
+    }
+
+    // ページに入れるスクリプト（入っていれば何もしない）
+    static String helper(String token) {
+        return HELPER + "(window." + HOST_NAME + "," + quote(token) + ");";
+    }
+
+    // host は入れた時点の __xrbHost（後からページが差し替えても通知先は変わらない）
+    static final String HELPER = "(function(host,token){"
+            + "if(window." + API_NAME + ") return window." + API_NAME + ";"
+            + "function fire(e,t){e.dispatchEvent(new Event(t,{bubbles:true}));}"
+            + "function editable(){"
+            + "  var e=document.activeElement;"
+            + "  if(!e) return null;"
+            + "  var tag=(e.tagName||'').toUpperCase();"
+            + "  if(tag!=='INPUT' && tag!=='TEXTAREA' && !e.isContentEditable) return null;"
+            + "  return e;"
+            + "}"
+            + "function val(e){return ('value' in e)?(e.value||''):(e.textContent||'');}"
+            + "function put(e,v){if('value' in e) e.value=v; else e.textContent=v;}"
+            + "function sel(e,v){"
+            + "  return [(e.selectionStart!=null)?e.selectionStart:v.length,"
+            + "          (e.selectionEnd!=null)?e.selectionEnd:v.length];"
+            + "}"
+            // カーソル位置に挿入
+            + "function ins(t){"
+            + "  var e=editable(); if(!e) return;"
+            + "  var v=val(e), r=sel(e,v);"
+            + "  put(e,v.substring(0,r[0])+t+v.substring(r[1]));"
+            + "  var p=r[0]+t.length;"
+            + "  if(e.setSelectionRange) e.setSelectionRange(p,p);"
+            + "  fire(e,'input');"
+            + "}"
+            // カーソルの左1文字 or 選択範囲削除
+            + "function back(){"
+            + "  var e=editable(); if(!e) return;"
+            + "  var v=val(e), r=sel(e,v), s=r[0];"
+            + "  if(s===r[1] && s>0){ s=s-1; }"
+            + "  put(e,v.substring(0,s)+v.substring(r[1]));"
+            + "  if(e.setSelectionRange) e.setSelectionRange(s,s);"
+            + "  fire(e,'input');"
+            + "}"
+            // textareaは改行、inputはsubmit試行
+            + "function enter(){"
+            + "  var e=document.activeElement;"
+            + "  if(!e) return;"
+            + "  if((e.tagName||'').toUpperCase()==='TEXTAREA'){ ins('\\n'); return; }"
+            + "  if(e.form){"
+            + "    try{ e.form.requestSubmit(); return; }catch(_){"
+            + "      try{ e.form.submit(); return; }catch(__){}"
+            + "    }"
+            + "  }"
+            + "  e.dispatchEvent(new KeyboardEvent('keydown',{key:'Enter',bubbles:true}));"
+            + "  e.dispatchEvent(new KeyboardEvent('keyup',{key:'Enter',bubbles:true}));"
+            + "}"
+            // 末尾に追記
+            + "function app(t){"
+            + "  var e=document.activeElement;"
+            + "  if(!e || !('value' in e)) return;"
+            + "  e.value=(e.value||'')+t;"
+            + "  fire(e,'input'); fire(e,'change');"
+            + "}"
+            // 値を丸ごと置き換え
+            + "function set(t){"
+            + "  var e=document.activeElement;"
+            + "  if(!e || !('value' in e)) return;"
+            + "  e.value=t;"
+            + "  fire(e,'input');"
+            + "}"
+            // [s, s+d) を t に置き換え（差分同期）。n は置き換え前の長さで、違えばページ側で変わっているので
+            // 何もせず host.onSpliceRejected で知らせる（Unity 側が全文を送り直す）
+            // setRangeText は email / number などの input で例外になるので、そのときは値を組み立てて丸ごと入れる
+            + "function splice(s,d,t,n){"
+            + "  var e=editable(); if(!e) return;"
+            + "  var v=val(e);"
+            + "  if(n>=0 && v.length!==n){ try{ host.onSpliceRejected(token); }catch(_){} return; }"
+            + "  var done=false;"
+            + "  if(e.setRangeText){ try{ e.setRangeText(t,s,s+d,'end'); done=true; }catch(_){} }"
+            + "  if(!done){"
+            + "    put(e,v.substring(0,s)+t+v.substring(s+d));"
+            + "    try{ if(e.setSelectionRange) e.setSelectionRange(s+t.length,s+t.length); }catch(_){}"
+            + "  }"
+            + "  var it=d>0?(t.length>0?'insertReplacementText':'deleteContentBackward'):'insertText';"
+            + "  try{ e.dispatchEvent(new InputEvent('input',{bubbles:true,inputType:it,data:t.length>0?t:null})); }"
+            + "  catch(_){ fire(e,'input'); }"
+            + "}"
+            // フォーカス中要素の情報（value 抜き。変化したときだけ host.onFocus へ送る）
+            + "function info(e){"
+            + "  if(!e || e===document.body) return {hasFocus:false};"
+            + "  var tag=(e.tagName||'').toLowerCase();"
+            + "  var r=(e.getBoundingClientRect)?e.getBoundingClientRect():null;"
+            + "  return {"
+            + "    hasFocus:true,"
+            + "    editable:(tag==='input'||tag==='textarea'||e.isContentEditable),"
+            + "    tag:tag,type:(e.type||null),"
+            + "    selStart:(e.selectionStart!=null)?e.selectionStart:null,"
+            + "    selEnd:(e.selectionEnd!=null)?e.selectionEnd:null,"
+            + "    rect:r?{x:r.x,y:r.y,w:r.width,h:r.height}:null"
+            + "  };"
+            + "}"
+            // value は input とフォーカスの移動のときだけ読み、前と違うときだけ送る（null = 前のまま）
+            // selectionchange・scroll で毎回全文を文字列にして橋を渡らせない（大きい textarea で1打鍵 O(n) になる）
+            + "var lastInfo=null, lastValue=null, valueDirty=true, pushPending=false, scrollTimer=0;"
+            + "function push(){"
+            + "  pushPending=false;"
+            + "  var e=document.activeElement;"
+            + "  var j=JSON.stringify(info(e)), v=null;"
+            + "  if(valueDirty){"
+            + "    valueDirty=false;"
+            + "    var cur=(!e || e===document.body)?'':(('value' in e)?(e.value||''):(e.textContent||''));"
+            + "    if(cur!==lastValue){ lastValue=cur; v=cur; }"
+            + "  }"
+            + "  if(j===lastInfo && v===null) return;"
+            + "  lastInfo=j;"
+            + "  try{ host.onFocus(token,j,v); }catch(_){}"
+            + "}"
+            // 同じタスク内のイベントは1回の送信にまとめる
+            + "function schedule(){"
+            + "  if(pushPending) return;"
+            + "  pushPending=true;"
+            + "  Promise.resolve().then(push);"
+            + "}"
+            + "function changed(){ valueDirty=true; schedule(); }"
+            // scroll・resize は矩形が動くだけなので SCROLL_PUSH_MS に1回
+            + "function moved(){"
+            + "  if(scrollTimer) return;"
+            + "  scrollTimer=setTimeout(function(){ scrollTimer=0; schedule(); }," + SCROLL_PUSH_MS + ");"
+            + "}"
+            + "['focusin','focusout','input'].forEach(function(t){ window.addEventListener(t,changed,true); });"
+            + "['scroll','resize'].forEach(function(t){ window.addEventListener(t,moved,true); });"
+            + "document.addEventListener('selectionchange',schedule,true);"
+            + "schedule();"
+            // 1つの命令が例外を投げても（ページ側のリスナーなど）残りは流す
+            + "var api={run:function(ops){"
+            + "  for(var i=0;i<ops.length;i++){"
+            + "    var o=ops[i];"
+            + "    try{"
+            + "      switch(o[0]){"
+            + "        case 'i': ins(o[1]); break;"
+            + "        case 'b': back(); break;"
+            + "        case 'e': enter(); break;"
+            + "        case 'a': app(o[1]); break;"
+            + "        case 'v': set(o[1]); break;"
+            + "        case 's': splice(o[1],o[2],o[3],o[4]); break;"
+            + "      }"
+            + "    }catch(_){}"
+            + "  }"
+            + "  return ops.length;"
+            + "}};"
+            + "Object.defineProperty(window,'" + API_NAME + "',{value:api,writable:false,configurable:false});"
+            + "return api;"
+            + "})";
+}
@@ -0,0 +1,181 @@
+package webviewcpu;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 複数のパネル（WebViewCpuBridge）を1枚の atlas 配列にまとめて capture する
+// JNI の呼び出し・main looper への描画依頼・テクスチャの転送が、パネルの数によらず1フレーム1回ずつで済む
+//   配置：追加順に左上から棚詰め（段が埋まったら下の段へ）。外したら詰め直す
+//   表：パネルごとに TABLE_INTS 個 {x, y, frameWidth, frameHeight, n}
+//       n = 書いた矩形数（0 = 変化なし、-1 = 準備前・見えていない・凍結中）
+//   矩形：captureDirtyInto は変化したタイルを atlas 座標の {x, y, w, h} でパネル順に並べる
+// 出力形式は atlas で1つ（add したパネルはその形式に揃える）
+// add / remove / capture は同じ呼び出し側スレッドから
+public final class WebViewAtlas {
+    public static final int TABLE_INTS = 5;
+
+    private final int width, height, format;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // 差し替えるだけ（main looper の drawTask からも読む）
+    private volatile WebViewCpuBridge[] panels = new WebViewCpuBridge[0];
+    private int[] xs = new int[0], ys = new int[0];
+
+    private final AtomicBoolean drawPosted = new AtomicBoolean(false);
+    // main looper：依頼の出ているパネルを1回の番でまとめて描く
+    private final Runnable drawTask = () -> {
+        drawPosted.set(false);
+        for (WebViewCpuBridge b : panels)
+            b.drawIfRequested();
+    };
+
+    // format は OutputFormat の値（不正なら RGBA32）
+    public WebViewAtlas(int width, int height, int format) {
+        this.width = width;
+        this.height = height;
+        this.format = OutputFormat.isValid(format) ? format : OutputFormat.RGBA32;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getOutputBytesPerPixel() {
+        return OutputFormat.bytesPerPixel(format);
+    }
+
+    // Unity の TextureFormat の名前
+    public String getOutputTextureFormat() {
+        return OutputFormat.textureFormat(format);
+    }
+
+    public int getPanelCount() {
+        return panels.length;
+    }
+
+    // 空きが無い・atlas の形式に揃えられない（共有バッファで配信中）なら false（何も変えない）
+    public boolean add(WebViewCpuBridge bridge) {
+        final WebViewCpuBridge[] cur = panels;
+        if (indexOf(cur, bridge) >= 0)
+            return true;
+        WebViewCpuBridge[] next = new WebViewCpuBridge[cur.length + 1];
+        System.arraycopy(cur, 0, next, 0, cur.length);
+        next[cur.length] = bridge;
+        final int[] oldXs = xs, oldYs = ys;
+        if (!layout(next))
+            return false;
+        if (!bridge.setOutputFormat(format)) {
+            xs = oldXs;
+            ys = oldYs;
+            return false;
+        }
+        bridge.setAtlasDriven(true);
+        panels = next;
+        return true;
+    }
+
+    public void remove(WebViewCpuBridge bridge) {
+        final WebViewCpuBridge[] cur = panels;
+        final int i = indexOf(cur, bridge);
+        if (i < 0)
+            return;
+        WebViewCpuBridge[] next = new WebViewCpuBridge[cur.length - 1];
+        System.arraycopy(cur, 0, next, 0, i);
+        System.arraycopy(cur, i + 1, next, i, cur.length - i - 1);
+        layout(next); // 減らすだけなので必ず収まる
+        bridge.setAtlasDriven(false);
+        panels = next;
+        // 詰め直した区画は新しいフレームが来るまで空なので、描き直させる
+        for (WebViewCpuBridge b : next)
+            b.markDamaged();
+    }
+
+    // captureDirtyInto の outRects に要る長さ（パネルを足したら取り直す）
+    public int getDirtyRectCapacity() {
+        int n = 0;
+        for (WebViewCpuBridge b : panels)
+            n += b.getDirtyRectCapacity();
+        return n;
+    }
+
+    // 新フレームのあったパネルだけ、その区画の全面を書く。戻り値：書いたパネル数 / -1=失敗
+    public int captureInto(byte[] atlas, int[] outTable) {
+        return capture(atlas, outTable, null);
+    }
+
+    // 変化したタイルだけ書く（変化のない場所は前回の内容のまま）。戻り値：矩形数（0=変化なし） / -1=失敗
+    public int captureDirtyInto(byte[] atlas, int[] outTable, int[] outRects) {
+        if (outRects == null)
+            return -1;
+        return capture(atlas, outTable, outRects);
+    }
+
+    private int capture(byte[] atlas, int[] table, int[] rects) {
+        final WebViewCpuBridge[] p = panels;
+        if (atlas == null || atlas.length < width * height * OutputFormat.bytesPerPixel(format)
+                || table == null || table.length < p.length * TABLE_INTS
+                || rects != null && rects.length < getDirtyRectCapacity())
+            return -1;
+
+        // 描画の依頼は全パネル分を1回の post に（main looper の番も1回）
+        boolean draw = false;
+        for (WebViewCpuBridge b : p) {
+            if (b.requestAtlasDraw())
+                draw = true;
+        }
+        if (draw && drawPosted.compareAndSet(false, true))
+            mainHandler.post(drawTask);
+
+        int total = 0;
+        for (int i = 0; i < p.length; i++) {
+            final WebViewCpuBridge b = p[i];
+            final int n = b.captureAtlas(atlas, width, xs[i], ys[i], rects, total * 4);
+            final int t = i * TABLE_INTS;
+            table[t] = xs[i];
+            table[t + 1] = ys[i];
+            table[t + 2] = b.getFrameWidth();
+            table[t + 3] = b.getFrameHeight();
+            table[t + 4] = n;
+            if (n > 0)
+                total += rects != null ? n : 1;
+        }
+        return total;
+    }
+
+    // 追加順に棚詰め。収まらなければ false（xs/ys はそのまま）
+    private boolean layout(WebViewCpuBridge[] p) {
+        int[] nx = new int[p.length], ny = new int[p.length];
+        int x = 0, y = 0, shelf = 0;
+        for (int i = 0; i < p.length; i++) {
+            final int w = p[i].width(), h = p[i].height();
+            if (x > 0 && x + w > width) {
+                x = 0;
+                y += shelf;
+                shelf = 0;
+            }
+            if (x + w > width || y + h > height)
+                return false;
+            nx[i] = x;
+            ny[i] = y;
+            x += w;
+            shelf = Math.max(shelf, h);
+        }
+        xs = nx;
+        ys = ny;
+        return true;
+    }
+
+    private static int indexOf(WebViewCpuBridge[] p, WebViewCpuBridge b) {
+        for (int i = 0; i < p.length; i++) {
+            if (p[i] == b)
+                return i;
+        }
+        return -1;
+    }
+}
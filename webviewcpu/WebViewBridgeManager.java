@@ -0,0 +1,262 @@
+package webviewcpu;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// 全パネル（WebViewCpuBridge）をまとめて見て、メモリ予算を超えたら
+// しばらく見られていないパネルから凍結する。WebView と Bitmap はここで使い回す
+// 状態の変更はすべて main looper 上で行う
+public final class WebViewBridgeManager {
+    private static WebViewBridgeManager instance;
+
+    public static synchronized WebViewBridgeManager get() {
+        if (instance == null)
+            instance = new WebViewBridgeManager();
+        return instance;
+    }
+
+    private static final long CHECK_INTERVAL_MS = 1000;
+    private static final int MAX_POOLED_WEBVIEWS = 2;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ArrayList<WebViewCpuBridge> bridges = new ArrayList<>();
+    private final ArrayList<TrackedWebView> webViewPool = new ArrayList<>();
+    private final HashMap<Long, ArrayList<Bitmap>> bitmapPool = new HashMap<>();
+    private long pooledBitmapBytes = 0;
+    private volatile long usedBytes = 0; // 直近の見積もり（main looper で測る。getUsedBytes はどのスレッドからでも読む）
+    // 戻る・進む・パネルの開き直しですぐ出すための圧縮フレーム（全パネル共有）
+    private final SnapshotCache snapshots = new SnapshotCache(32L * 1024 * 1024);
+    // サブリソースのディスクキャッシュ（全パネル共有。WebView のネットワークスレッドからも取るので lock で守る）
+    private ResourceCache resourceCache;
+
+    private volatile long budgetBytes = 192L * 1024 * 1024;
+    private volatile long freezeAfterMs = 5000; // これより長く見られていないパネルだけ凍結する
+    private boolean checkScheduled = false;
+
+    private final Runnable checkTask = () -> {
+        checkScheduled = false;
+        enforceBudget();
+        if (!bridges.isEmpty())
+            scheduleCheck();
+    };
+
+    private WebViewBridgeManager() {
+    }
+
+    public void setBudgetBytes(long bytes) {
+        budgetBytes = bytes;
+        mainHandler.post(this::enforceBudget);
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public void setFreezeAfterMs(long ms) {
+        freezeAfterMs = Math.max(0, ms);
+    }
+
+    // 0 でスナップショットキャッシュを使わない
+    public void setSnapshotCacheBytes(long bytes) {
+        snapshots.setBudgetBytes(bytes);
+    }
+
+    public long getSnapshotCacheUsedBytes() {
+        return snapshots.usedBytes();
+    }
+
+    SnapshotCache snapshots() {
+        return snapshots;
+    }
+
+    // dir が同じなら同じキャッシュを返す（上限だけ更新）。別の dir なら前のものの索引を書いてから開き直す
+    synchronized ResourceCache resourceCache(File dir, long maxBytes) throws IOException {
+        ResourceCache cache = resourceCache;
+        if (cache != null && cache.dir().getCanonicalPath().equals(dir.getCanonicalPath())) {
+            cache.setMaxBytes(maxBytes);
+            return cache;
+        }
+        if (cache != null)
+            cache.flush();
+        resourceCache = cache = new ResourceCache(dir, maxBytes);
+        return cache;
+    }
+
+    // 見積もり使用量（パネル分 + プール分 + スナップショット）。どのスレッドから呼んでもよい
+    // main looper が直近に測った値なので、最大 CHECK_INTERVAL_MS ほど古い
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    // main looper：今の使用量を測って getUsedBytes の値も更新する（bridges・プールは main looper 専用）
+    private long measureUsedBytes() {
+        long total = pooledBitmapBytes + snapshots.usedBytes();
+        for (int i = 0; i < bridges.size(); i++)
+            total += bridges.get(i).estimateBytes();
+        usedBytes = total;
+        return total;
+    }
+
+    // -------------------------
+    // Bridges（main looper）
+    // -------------------------
+
+    void register(WebViewCpuBridge bridge) {
+        if (!bridges.contains(bridge))
+            bridges.add(bridge);
+        enforceBudget();
+        scheduleCheck();
+    }
+
+    void unregister(WebViewCpuBridge bridge) {
+        bridges.remove(bridge);
+    }
+
+    private void scheduleCheck() {
+        if (checkScheduled)
+            return;
+        checkScheduled = true;
+        mainHandler.postDelayed(checkTask, CHECK_INTERVAL_MS);
+    }
+
+    // 予算超過なら プール → 見られていない順のパネル の順で手放す
+    void enforceBudget() {
+        long used = measureUsedBytes();
+        if (used <= budgetBytes)
+            return;
+
+        used -= trimPools();
+
+        final long now = SystemClock.uptimeMillis();
+        while (used > budgetBytes) {
+            WebViewCpuBridge lru = null;
+            for (int i = 0; i < bridges.size(); i++) {
+                WebViewCpuBridge b = bridges.get(i);
+                if (!b.canFreeze(now, freezeAfterMs))
+                    continue;
+                if (lru == null || b.lastViewedUptime() < lru.lastViewedUptime())
+                    lru = b;
+            }
+            if (lru == null)
+                break; // 凍結できるパネルが無い
+
+            long before = lru.estimateBytes();
+            lru.freeze();
+            used -= before - lru.estimateBytes();
+        }
+        usedBytes = used;
+    }
+
+    private long trimPools() {
+        long freed = pooledBitmapBytes + snapshots.clear();
+        for (ArrayList<Bitmap> list : bitmapPool.values()) {
+            for (int i = 0; i < list.size(); i++)
+                list.get(i).recycle();
+        }
+        bitmapPool.clear();
+        pooledBitmapBytes = 0;
+
+        for (int i = 0; i < webViewPool.size(); i++)
+            webViewPool.get(i).destroy();
+        webViewPool.clear();
+        return freed;
+    }
+
+    // -------------------------
+    // Pools（main looper）
+    // -------------------------
+
+    TrackedWebView acquireWebView(Context context) {
+        int n = webViewPool.size();
+        if (n > 0) {
+            TrackedWebView wv = webViewPool.remove(n - 1);
+            wv.clearHistory(); // about:blank の読み込みが終わる前に預け直されていた場合の分
+            wv.onResume();
+            return wv;
+        }
+        return new TrackedWebView(context);
+    }
+
+    // WebView・Bitmap をプールの上限・予算まで先に作っておく（WebViewCpuBridge.prewarm から）
+    public void prewarm(Context context, int width, int height, int bitmaps) {
+        mainHandler.post(() -> {
+            if (webViewPool.isEmpty())
+                releaseWebView(new TrackedWebView(context));
+            final Long k = key(width, height, Bitmap.Config.ARGB_8888);
+            ArrayList<Bitmap> list = bitmapPool.get(k);
+            for (int i = list != null ? list.size() : 0; i < bitmaps; i++) {
+                if (measureUsedBytes() + (long) width * height * 4 > budgetBytes)
+                    break;
+                releaseBitmap(Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888));
+            }
+        });
+    }
+
+    // 預かっている間の WebViewClient。loadUrl 直後の clearHistory は about:blank が確定する前で効かないので、
+    // 読み終わってから前のページの履歴を消す
+    private static final WebViewClient POOLED_CLIENT = new WebViewClient() {
+        @Override
+        public void onPageFinished(WebView view, String url) {
+            if ("about:blank".equals(url))
+                view.clearHistory();
+        }
+    };
+
+    // 中身を空にしてから預かる（溢れた分は destroy）
+    void releaseWebView(TrackedWebView wv) {
+        wv.setListener(null);
+        wv.setWebChromeClient(null);
+        wv.setWebViewClient(POOLED_CLIENT);
+        wv.removeJavascriptInterface(WebJs.HOST_NAME); // 次に使うブリッジが自分の JsHost を入れ直す
+        wv.stopLoading();
+        if (webViewPool.size() >= MAX_POOLED_WEBVIEWS) {
+            wv.destroy();
+            return;
+        }
+        wv.loadUrl("about:blank");
+        wv.onPause();
+        webViewPool.add(wv);
+    }
+
+    Bitmap acquireBitmap(int w, int h, Bitmap.Config config) {
+        ArrayList<Bitmap> list = bitmapPool.get(key(w, h, config));
+        if (list != null && !list.isEmpty()) {
+            Bitmap b = list.remove(list.size() - 1);
+            pooledBitmapBytes -= b.getAllocationByteCount();
+            return b;
+        }
+        return Bitmap.createBitmap(w, h, config);
+    }
+
+    void releaseBitmap(Bitmap b) {
+        if (b == null || b.isRecycled())
+            return;
+        long bytes = b.getAllocationByteCount();
+        if (measureUsedBytes() + bytes > budgetBytes) {
+            b.recycle();
+            return;
+        }
+        Long k = key(b.getWidth(), b.getHeight(), b.getConfig());
+        ArrayList<Bitmap> list = bitmapPool.get(k);
+        if (list == null) {
+            list = new ArrayList<>();
+            bitmapPool.put(k, list);
+        }
+        list.add(b);
+        pooledBitmapBytes += bytes;
+    }
+
+    private static Long key(int w, int h, Bitmap.Config config) {
+        return ((long) w << 32) | ((long) (h & 0xFFFFFF) << 8) | (config != null ? config.ordinal() : 0xFF);
+    }
+}
@@ -3,90 +3,653 @@ package webviewcpu;
 import android.app.Activity;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Picture;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.SystemClock;
+import android.util.Log;
 import android.view.KeyEvent;
-import android.view.MotionEvent;
-import android.webkit.ValueCallback;
+import android.webkit.CookieManager;
+import android.webkit.JavascriptInterface;
+import android.webkit.WebChromeClient;
+import android.webkit.WebBackForwardList;
+import android.webkit.WebHistoryItem;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
+import android.webkit.WebViewClient;
 
-import org.json.JSONObject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class WebViewCpuBridge {
+    // captureLatestInto の戻り値
+    public static final long NO_NEW_FRAME = 0;
+    public static final long CAPTURE_FAILED = -1;
+
+    private final Activity activity;
     private final int width, height;
     private WebView webView;
-    private Bitmap bitmap;
-    private Canvas canvas;
-    private int[] pixelBuf;
-    private byte[] rgbaBuf;
+    // int[] 経由の capture（リング → 変換）。作業配列は凍結時に手放す
+    private final FramePipeline pipeline;
+    private volatile int outputFormat = OutputFormat.RGBA32; // main looper が Bitmap の形式を決めるのに読む
+
+    // -------------------------
+    // Frame ring（トリプルバッファ）
+    // main looper が back に描いて published と交換し、
+    // 呼び出し側は published に新フレームがあれば front と交換して読む
+    // どちらも相手の書き込み中スロットには触らないので待ちもテアリングも無い
+    // -------------------------
+    private static final int RING_SIZE = 3;
+    private static final int SLOT_MASK = 3;
+    private static final int FRESH = 4; // published に未取得の新フレームがある
+
+    private static final class FrameSlot {
+        Bitmap bitmap; // 全面（必要になったときに確保）
+        Canvas canvas;
+        long frameId; // 0 = まだ描かれていない
+
+        // foveated のときは bitmap ではなくこちらに描く
+        boolean foveated;
+        Bitmap focus, low;
+        Canvas focusCanvas, lowCanvas;
+        int fx, fy, fw, fh, lowDiv;
+
+        // スクロール：描いた時点の位置と、世代（0 = 比べられない）・contentSeq
+        int scrollX, scrollY;
+        long scrollEpoch, contentSeq;
+        Bitmap shiftFrom; // null でなければ これを shiftDy ずらして、出てきた帯だけ描く
+        int shiftDy;
+    }
+
+    private final FrameSlot[] slots = new FrameSlot[RING_SIZE];
+    private final AtomicInteger published = new AtomicInteger(1);
+    private int backIndex = 0;  // 描く側専用（main looper、off-main raster 中は raster スレッド）
+    private int frontIndex = 2; // 呼び出し側専用
+    private long producedFrames = 0; // 描く側専用
+    private volatile long latestFrameId = 0;
+
+    // -------------------------
+    // Foveation（注視領域だけ等倍、残りは縮小）
+    // fx,fy,fw,fh を 16bit ずつ詰めた値。-1 = 無効
+    // -------------------------
+    private volatile long foveaRect = -1;
+    private volatile int foveaLowDiv = 4;
+
+    // -------------------------
+    // Dynamic resolution（全面フレームを描く倍率を所要時間で上げ下げする）
+    // 出力配列は width*height のまま、フレームは左上の frameWidth x frameHeight に入る
+    // -------------------------
+    private final ResolutionScaler scaler = new ResolutionScaler();
+    private volatile boolean dynamicResolution = false;
+    private volatile long captureCostNanos = 0; // 直近の capture（読み出し＋差分＋変換）。main looper が draw と足して使う
+    private int frameWidth, frameHeight;        // 呼び出し側専用。直近に capture したフレームの大きさ
+    private ByteBuffer scaledScratch;           // 呼び出し側専用。縮小フレームを行ごとに並べ直す（direct）
+
+    // -------------------------
+    // Shared frames（publish スレッドが captureDirtyInto を回し、Unity と共有する direct ByteBuffer へ seqlock で書く）
+    // 動いている間は publish スレッドが唯一の capture 呼び出し側
+    // -------------------------
+    private final Object sharedLock = new Object();
+    private SharedFrameBuffer shared;     // sharedLock の下で差し替える
+    private HandlerThread publishThread;  // sharedLock の下
+    private volatile Handler publishHandler;
+    private final Runnable publishTask = this::publishShared;
+
+    private final AtomicBoolean drawRequested = new AtomicBoolean(false);
+    private final Runnable drawTask = this::drawFrame;
+    // WebViewAtlas に入っている間は、描画の依頼を atlas がまとめて1回の post で出す
+    private volatile boolean atlasDriven = false;
+
+    // -------------------------
+    // Scroll shift（縦スクロールだけのフレームは、前のフレームをずらして出てきた帯だけ描く）
+    // 「スクロールだけ」= 前のフレームから contentSeq（ページ・入力・JS など WebView の invalidate 以外の変化）が進んでいない
+    // invalidate は スクロールと内容の変化を区別できないので、帯の外の変化は SCROLL_RUN_MAX フレームごとと
+    // スクロールが止まった次のフレームで全面を描き直して拾う
+    // position: fixed / sticky のヘッダ・下端のバーもずれて見える（次の全面まで）ので、既定は off（ページを選んで使う）
+    // -------------------------
+    private static final int SCROLL_RUN_MAX = 8;
+    private static final Paint SHIFT_PAINT = new Paint();
+    static {
+        SHIFT_PAINT.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    }
+    private volatile boolean scrollShift = false;
+    private long scrollEpoch = 0; // 描く側専用。全面を描くたびに進む
+    private int scrollRun = 0;    // 描く側専用。続けてずらしたフレーム数
+
+    // -------------------------
+    // Off-main raster（main looper では表示リストを Picture に記録するだけ、
+    // ラスタ・公開は専用の HandlerThread で行う。記録とラスタは1フレームずつ交互）
+    // -------------------------
+    private volatile boolean offMainRaster = false;
+    private HandlerThread rasterThread;     // main looper 専用
+    private volatile Handler rasterHandler;
+    private final Picture picture = new Picture();
+    private final Object ringLock = new Object(); // raster スレッドと main looper が ring を触るとき
+    private volatile boolean rasterBusy = false;  // Picture をラスタ中（次の記録は待つ）
+    private FrameSlot rasterSlot;                 // 以下 main looper が書いて rasterBusy で渡す
+    private long rasterDamage;
+    private long rasterRecordNanos;
+    private final Runnable rasterTask = this::rasterFrame;
+
+    // -------------------------
+    // Damage（描き直しが必要か）
+    // -------------------------
+    private final AtomicLong damageSeq = new AtomicLong(1);
+    private final AtomicLong contentSeq = new AtomicLong(1); // damageSeq のうち WebView の invalidate 以外
+    private volatile long drawnDamageSeq = 0;    // 最新フレームを描いた時点の damageSeq
+    private volatile long lastDamageUptime = 0;
+    private volatile long lastDrawUptime = 0;
+    private volatile boolean damageDriven = true;
+    private volatile long idleRefreshMs = 2000;  // invalidate の取りこぼし対策（0 = しない）
+    private volatile int adaptiveMinMs = 33;
+    private volatile int adaptiveMaxMs = 1000;
+
+    // -------------------------
+    // Freeze（WebViewBridgeManager がメモリ予算超過時に使う）
+    // WebView と Bitmap を手放し、縮小スナップショットと履歴だけ残す
+    // 次に capture されたら復帰して、まずスナップショットを1フレームとして出す
+    // -------------------------
+    // WebView 1枚ぶんの概算（レンダラ側のタイル・JSヒープなど。実測値ではない）
+    private static final long WEBVIEW_COST_BYTES = 24L * 1024 * 1024;
+    private static final int SNAPSHOT_DIV = 2;
+
+    private final WebViewBridgeManager manager = WebViewBridgeManager.get();
+    private volatile boolean frozen = false;
+    // setVisible を呼ばない使い方では映っているものとして扱う（共有メモリ・アトラスへの出力を止めない）
+    private volatile boolean visible = true;
+    private volatile long lastViewedUptime = 0;
+    private final AtomicBoolean thawRequested = new AtomicBoolean(false);
+    private final Runnable thawTask = this::thaw;
+    private Bitmap snapshot;    // RGB_565, 1/SNAPSHOT_DIV
+    private Bundle savedState;
+    private String savedUrl;
+
+    // -------------------------
+    // Metrics（段ごとの所要時間と件数。Unity からは getMetricsSnapshot で読む）
+    // -------------------------
+    private static final String TAG_I = "WVCPU_IMPORTANT";
+    private final CaptureMetrics metrics = new CaptureMetrics();
+    private volatile long drawRequestNanos = 0;
+    private volatile long metricsLogMs = 0; // 0 = logcat に出さない
+    private boolean metricsLogScheduled = false; // main looper 専用
+    private final Runnable metricsLogTask = this::logMetrics;
+
+    // -------------------------
+    // Recording（capture したフレームと入力をファイルへ。読み戻しは Tools~ の FrameReplayer）
+    // -------------------------
+    private volatile FrameRecorder recorder;
+    private long lastRecordedFrameId = 0; // 呼び出し側専用
+
+    // -------------------------
+    // Pointer stream（ドラッグ・スクロール・マルチタッチ。move は1回の番でまとめて流す）
+    // -------------------------
+    private final PointerStream pointers = new PointerStream();
+    private final AtomicBoolean pointerFlushScheduled = new AtomicBoolean(false);
+    private final Runnable pointerFlushTask = this::flushPointers;
+
+    // -------------------------
+    // Snapshot cache（ページを離れるときに最新フレームを圧縮して manager に預け、
+    // 戻る・進む・同じURLを開いたときは先にそれを1フレームとして出す）
+    // 新しいページが描かれる（onPageCommitVisible）まではライブの描画で上書きしない
+    // -------------------------
+    private static final long HOLD_CACHED_MAX_MS = 3000;
+    private String currentUrl;       // main looper 専用
+    private long holdCachedUntil = 0; // main looper 専用。0 = 保持していない
+
+    // -------------------------
+    // Resource cache（サブリソースを manager のディスクキャッシュから返す。null = 使わない）
+    // 読むのは WebView のネットワークスレッド（shouldInterceptRequest）
+    // -------------------------
+    private volatile ResourceCache resourceCache;
+
+    // -------------------------
+    // Keys（キーコードのリング → main looper で1回にまとめて流す）
+    // -------------------------
+    private static final int KEY_EVENT_CACHE = 320; // KeyEvent.getMaxKeyCode() より大きめ
+    private final int[] pendingKeys = new int[64];
+    private int pendingKeyHead = 0, pendingKeyCount = 0; // pendingKeys の lock の下
+    private final AtomicBoolean keyFlushScheduled = new AtomicBoolean(false);
+    private final Runnable keyFlushTask = this::flushKeys;
+    private final KeyEvent[] keyDownEvents = new KeyEvent[KEY_EVENT_CACHE]; // main looper 専用
+    private final KeyEvent[] keyUpEvents = new KeyEvent[KEY_EVENT_CACHE];
+
+    // -------------------------
+    // JS command queue（1フレーム分の編集をまとめて1回の evaluateJavascript に）
+    // -------------------------
+    private final JsCommandQueue jsQueue = new JsCommandQueue();
+    private final AtomicBoolean jsFlushScheduled = new AtomicBoolean(false);
+    private final Runnable jsFlushTask = this::flushJs;
+
+    // -------------------------
+    // Focus snapshot（ページ側から push される。読むのはロック無し O(1)）
+    // -------------------------
+    private static final int MAX_FOCUS_STATE_CHARS = 4 * 1024;    // value 抜きの JSON（tag・type・矩形など）
+    private static final int MAX_FOCUS_VALUE_CHARS = 1024 * 1024; // これより長い値は送られても受け取らない
+    private volatile String focusJson = WebJs.NO_FOCUS_JSON;
+    private final AtomicLong focusVersion = new AtomicLong(0);
+    private final AtomicLong spliceRejects = new AtomicLong(0);
+    private final String hostToken = WebJs.newToken();
+    private final String helperScript = WebJs.helper(hostToken);
+
+    // ページ側ヘルパとの窓口（addJavascriptInterface 用。呼ばれるのは JavaBridge スレッド）
+    // どのフレームのどのスクリプトからも呼べるので、token の無いもの・形や大きさのおかしいものは捨てる
+    private final class JsHost {
+        private String focusValue = ""; // 以下 JavaBridge スレッド専用
+        private final StringBuilder sb = new StringBuilder();
+
+        // state は value 抜きの {hasFocus,...}、value は変わったときだけ（null = 前のまま）
+        @JavascriptInterface
+        public void onFocus(String token, String state, String value) {
+            if (!hostToken.equals(token) || state == null || state.length() > MAX_FOCUS_STATE_CHARS
+                    || !state.startsWith("{\"hasFocus\":") || !state.endsWith("}")
+                    || (value != null && value.length() > MAX_FOCUS_VALUE_CHARS))
+                return;
+            if (value != null)
+                focusValue = value;
+            if (state.startsWith("{\"hasFocus\":false")) {
+                focusJson = WebJs.NO_FOCUS_JSON;
+            } else {
+                sb.setLength(0);
+                sb.append(state, 0, state.length() - 1).append(",\"value\":");
+                WebJs.quoteInto(sb, focusValue);
+                focusJson = sb.append('}').toString();
+            }
+            focusVersion.incrementAndGet();
+        }
+
+        // splice の expectedLength がページ側の値の長さと違って捨てた
+        @JavascriptInterface
+        public void onSpliceRejected(String token) {
+            if (hostToken.equals(token))
+                spliceRejects.incrementAndGet();
+        }
+    }
 
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private volatile boolean ready = false;
 
+    // -------------------------
+    // Startup（WebView ができる前の入力は貯めておき、できたら main looper で順に流してから ready にする）
+    // -------------------------
+    private static final int STARTUP_CALLS_MAX = 256; // 溢れた分は捨てる（毎フレームの pointerMove など）
+    private final ArrayList<Runnable> startupCalls = new ArrayList<>(); // 以下 startupCalls の lock の下
+    private boolean startupDone = false;
+    private ReadyListener readyListener;
+
+    // main looper で1回だけ呼ばれる（Unity からは AndroidJavaProxy で受ける）
+    public interface ReadyListener {
+        void onReady();
+    }
+
     public WebViewCpuBridge(Activity activity, int width, int height) {
+        this.activity = activity;
         this.width = width;
         this.height = height;
+        this.pipeline = new FramePipeline(new RingSource(), StripedConverter.shared(), metrics);
+        this.frameWidth = width;
+        this.frameHeight = height;
 
         mainHandler.post(() -> {
-            webView = new WebView(activity);
-            webView.setWillNotDraw(false);
-
-            WebSettings s = webView.getSettings();
-            s.setJavaScriptEnabled(true);
-            s.setDomStorageEnabled(true);
+            attachWebView();
+            allocateSlots();
+            lastViewedUptime = SystemClock.uptimeMillis();
+            manager.register(this);
+            finishStartup();
+            scheduleMetricsLog();
+        });
+    }
 
-            // draw安定化（CPU）
-            webView.setLayerType(WebView.LAYER_TYPE_SOFTWARE, null);
+    // アプリ起動時などに呼んでおくと、最初のパネルの WebView 生成（Chromium の初期化）・Bitmap 確保・変換スレッドの起動を先に済ませられる
+    // width/height は最初に開くパネルの大きさ。何度呼んでもよい（プールの上限までしか作らない）
+    public static void prewarm(Activity activity, int width, int height) {
+        StripedConverter.shared();
+        WebViewBridgeManager.get().prewarm(activity, width, height, RING_SIZE);
+    }
 
-            webView.layout(0, 0, width, height);
+    public boolean isReady() {
+        return ready;
+    }
 
-            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            canvas = new Canvas(bitmap);
-            pixelBuf = new int[width * height];
-            rgbaBuf = new byte[width * height * 4];
+    // 準備ができたら main looper で listener を呼ぶ（もう済んでいれば次の main looper の番で）
+    public void setReadyListener(ReadyListener listener) {
+        synchronized (startupCalls) {
+            if (!startupDone) {
+                readyListener = listener;
+                return;
+            }
+        }
+        if (listener != null)
+            mainHandler.post(listener::onReady);
+    }
 
+    // main looper：貯めた呼び出しを順に流してから ready にする
+    // 流している間に他のスレッドから来た呼び出しは lock で待たせ、流し終わってから通す（順番が入れ替わらない）
+    private void finishStartup() {
+        ReadyListener listener;
+        synchronized (startupCalls) {
+            startupDone = true;
+            for (int i = 0; i < startupCalls.size(); i++)
+                startupCalls.get(i).run();
+            startupCalls.clear();
             ready = true;
+            listener = readyListener;
+            readyListener = null;
+        }
+        if (listener != null)
+            listener.onReady();
+    }
+
+    // 準備前なら call を貯めて true（流すときは main looper で呼ばれ、今度は false になる）
+    // 呼ぶ側は !ready && deferred(...) の形にする（準備後はラムダを作らない = new 無し）
+    private boolean deferred(Runnable call) {
+        synchronized (startupCalls) {
+            if (startupDone)
+                return false;
+            if (startupCalls.size() < STARTUP_CALLS_MAX)
+                startupCalls.add(call);
+            return true;
+        }
+    }
+
+    // main looper：プールから WebView を受け取って設定する
+    private void attachWebView() {
+        TrackedWebView tracked = manager.acquireWebView(activity);
+        tracked.setListener(this::markInvalidated);
+        webView = tracked;
+        webView.setWillNotDraw(false);
+        webView.setWebChromeClient(new WebChromeClient() {
+            @Override
+            public void onProgressChanged(WebView view, int newProgress) {
+                markDamaged();
+                // 読み込み完了でも入れておく（入っていれば何もしない）
+                if (newProgress == 100)
+                    view.evaluateJavascript(helperScript, null);
+            }
+        });
+
+        webView.setWebViewClient(new WebViewClient() {
+            @Override
+            public void onPageStarted(WebView view, String url, Bitmap favicon) {
+                markDamaged();
+                // goBack/goForward で先に出していればここでは何もしない
+                if (url == null || url.equals(currentUrl))
+                    return;
+                cacheCurrentFrame();
+                currentUrl = url;
+                showCachedFrame(url);
+            }
+
+            @Override
+            public void onPageCommitVisible(WebView view, String url) {
+                releaseCachedHold();
+                // 新しいページが見え始めたらヘルパとフォーカス監視を入れる（メインフレームだけに入る）
+                view.evaluateJavascript(helperScript, null);
+            }
+
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                releaseCachedHold();
+            }
+
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                return interceptRequest(request);
+            }
         });
+
+        WebSettings s = webView.getSettings();
+        s.setJavaScriptEnabled(true);
+        s.setDomStorageEnabled(true);
+        webView.addJavascriptInterface(new JsHost(), WebJs.HOST_NAME);
+
+        // draw安定化（CPU）
+        webView.setLayerType(WebView.LAYER_TYPE_SOFTWARE, null);
+
+        webView.layout(0, 0, width, height);
+    }
+
+    // main looper：リングを作り直す（Bitmap は描くときに用意する）
+    private void allocateSlots() {
+        for (int i = 0; i < RING_SIZE; i++)
+            slots[i] = new FrameSlot();
+        // 未取得フラグだけ落とす（スロットの並びはそのまま）
+        published.set(published.get() & SLOT_MASK);
+    }
+
+    // main looper：リングの Bitmap をプールへ返す（ラスタ中ならその終わりを待つ）
+    private void releaseSlots() {
+        synchronized (ringLock) {
+            for (int i = 0; i < RING_SIZE; i++) {
+                FrameSlot slot = slots[i];
+                slots[i] = null;
+                if (slot != null) {
+                    manager.releaseBitmap(slot.bitmap);
+                    manager.releaseBitmap(slot.focus);
+                    manager.releaseBitmap(slot.low);
+                }
+            }
+        }
+    }
+
+    // main looper：全面用の Bitmap（bw x bh）を用意する
+    // 大きさ（dynamic resolution）か出力形式が変わっていたら取り直す
+    private void ensureFullBitmap(FrameSlot slot, int bw, int bh) {
+        final Bitmap.Config config = bitmapConfig();
+        if (slot.bitmap != null && (slot.bitmap.getConfig() != config
+                || slot.bitmap.getWidth() != bw || slot.bitmap.getHeight() != bh)) {
+            manager.releaseBitmap(slot.bitmap);
+            slot.bitmap = null;
+        }
+        if (slot.bitmap == null) {
+            slot.bitmap = manager.acquireBitmap(bw, bh, config);
+            slot.canvas = new Canvas(slot.bitmap);
+        }
+    }
+
+    // main looper：foveated 用の2枚を用意する（サイズ・出力形式が変わったら取り直す）
+    private void ensureFoveaBitmaps(FrameSlot slot, int fw, int fh, int lw, int lh) {
+        final Bitmap.Config config = bitmapConfig();
+        if (slot.focus == null || slot.focus.getWidth() != fw || slot.focus.getHeight() != fh
+                || slot.focus.getConfig() != config) {
+            manager.releaseBitmap(slot.focus);
+            slot.focus = manager.acquireBitmap(fw, fh, config);
+            slot.focusCanvas = new Canvas(slot.focus);
+        }
+        if (slot.low == null || slot.low.getWidth() != lw || slot.low.getHeight() != lh
+                || slot.low.getConfig() != config) {
+            manager.releaseBitmap(slot.low);
+            slot.low = manager.acquireBitmap(lw, lh, config);
+            slot.lowCanvas = new Canvas(slot.low);
+        }
+    }
+
+    // RGB565 のときは描く段階から RGB_565（ラスタ・getPixels・プールの帯域が半分）
+    private Bitmap.Config bitmapConfig() {
+        return outputFormat == OutputFormat.RGB565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
     }
 
     public void loadUrl(String url) {
+        recordInput(FrameRecorder.IN_LOAD_URL, 0, 0, 0, url);
         mainHandler.post(() -> {
             if (!ready || webView == null)
                 return;
             webView.loadUrl(url);
+            markDamaged();
         });
     }
 
+    // 行き先がキャッシュにあれば、WebView が描き直すのを待たずにそれを出す
+    public void goBack() {
+        recordInput(FrameRecorder.IN_HISTORY, -1, 0, 0, null);
+        mainHandler.post(() -> navigateHistory(-1));
+    }
+
+    public void goForward() {
+        recordInput(FrameRecorder.IN_HISTORY, 1, 0, 0, null);
+        mainHandler.post(() -> navigateHistory(1));
+    }
+
+    // main looper
+    private void navigateHistory(int step) {
+        if (!ready || webView == null)
+            return;
+        if (step < 0 ? !webView.canGoBack() : !webView.canGoForward())
+            return;
+
+        String target = null;
+        WebBackForwardList list = webView.copyBackForwardList();
+        if (list != null) {
+            WebHistoryItem item = list.getItemAtIndex(list.getCurrentIndex() + step);
+            if (item != null)
+                target = item.getUrl();
+        }
+        if (target != null && !target.equals(currentUrl)) {
+            cacheCurrentFrame();
+            currentUrl = target; // onPageStarted で二重に出さない
+            showCachedFrame(target);
+        }
+
+        if (step < 0)
+            webView.goBack();
+        else
+            webView.goForward();
+        markDamaged();
+    }
+
     // -------------------------
     // Input: Tap / Key / Text
     // -------------------------
 
     // (x,y) は WebView ピクセル座標（左上原点）
+    // pointer stream に積むだけ（post は1回の番につき1回、new 無し）。押されているポインタとは別のジェスチャになる
     public void tap(float x, float y) {
-        if (!ready || webView == null)
+        if (!ready && deferred(() -> tap(x, y)) || webView == null)
             return;
+        recordInput(FrameRecorder.IN_TAP, 0, x, y, null);
 
-        mainHandler.post(() -> {
-            long now = SystemClock.uptimeMillis();
-            MotionEvent down = MotionEvent.obtain(now, now, MotionEvent.ACTION_DOWN, x, y, 0);
-            MotionEvent up = MotionEvent.obtain(now, now + 10, MotionEvent.ACTION_UP, x, y, 0);
-            webView.dispatchTouchEvent(down);
-            webView.dispatchTouchEvent(up);
-            down.recycle();
-            up.recycle();
-        });
+        if (pointers.tap(x, y, SystemClock.uptimeMillis()))
+            schedulePointerFlush();
     }
 
+    // 押された順に main looper でまとめて流す（KeyEvent はキーコードごとに使い回す）
     public void key(int keyCode) {
-        if (!ready || webView == null)
+        if (!ready && deferred(() -> key(keyCode)) || webView == null)
             return;
+        recordInput(FrameRecorder.IN_KEY, keyCode, 0, 0, null);
 
-        mainHandler.post(() -> {
-            webView.dispatchKeyEvent(new KeyEvent(KeyEvent.ACTION_DOWN, keyCode));
-            webView.dispatchKeyEvent(new KeyEvent(KeyEvent.ACTION_UP, keyCode));
-        });
+        synchronized (pendingKeys) {
+            if (pendingKeyCount == pendingKeys.length)
+                return; // 溢れた分は捨てる（main looper が詰まっている）
+            pendingKeys[(pendingKeyHead + pendingKeyCount) % pendingKeys.length] = keyCode;
+            pendingKeyCount++;
+        }
+        if (keyFlushScheduled.compareAndSet(false, true))
+            mainHandler.post(keyFlushTask);
+    }
+
+    // main looper
+    private void flushKeys() {
+        keyFlushScheduled.set(false);
+        while (true) {
+            int keyCode;
+            synchronized (pendingKeys) {
+                if (pendingKeyCount == 0)
+                    break;
+                keyCode = pendingKeys[pendingKeyHead];
+                pendingKeyHead = (pendingKeyHead + 1) % pendingKeys.length;
+                pendingKeyCount--;
+            }
+            if (webView == null)
+                continue; // 凍結・破棄済みなら捨てる
+            webView.dispatchKeyEvent(keyEvent(KeyEvent.ACTION_DOWN, keyCode));
+            webView.dispatchKeyEvent(keyEvent(KeyEvent.ACTION_UP, keyCode));
+            markDamaged();
+        }
+    }
+
+    // main looper：キーコードごとに1回だけ作る（範囲外のコードは毎回 new）
+    private KeyEvent keyEvent(int action, int keyCode) {
+        if (keyCode < 0 || keyCode >= KEY_EVENT_CACHE)
+            return new KeyEvent(action, keyCode);
+        KeyEvent[] cache = action == KeyEvent.ACTION_DOWN ? keyDownEvents : keyUpEvents;
+        KeyEvent e = cache[keyCode];
+        if (e == null)
+            cache[keyCode] = e = new KeyEvent(action, keyCode);
+        return e;
+    }
+
+    // -------------------------
+    // Input: Pointer stream
+    // -------------------------
+
+    // id はポインタごとに一意（コントローラ左右など）。座標は tap と同じ WebView ピクセル座標
+    // 毎フレーム呼んでよい。main looper へは1回の番につき1回しか post しない
+    public void pointerDown(int id, float x, float y) {
+        if (!ready && deferred(() -> pointerDown(id, x, y)) || webView == null)
+            return;
+        recordInput(FrameRecorder.IN_POINTER_DOWN, id, x, y, null);
+
+        if (pointers.down(id, x, y, SystemClock.uptimeMillis()))
+            schedulePointerFlush();
+    }
+
+    public void pointerMove(int id, float x, float y) {
+        if (!ready && deferred(() -> pointerMove(id, x, y)) || webView == null)
+            return;
+        recordInput(FrameRecorder.IN_POINTER_MOVE, id, x, y, null);
+
+        if (pointers.move(id, x, y, SystemClock.uptimeMillis()))
+            schedulePointerFlush();
+    }
+
+    public void pointerUp(int id, float x, float y) {
+        if (!ready && deferred(() -> pointerUp(id, x, y)) || webView == null)
+            return;
+        recordInput(FrameRecorder.IN_POINTER_UP, id, x, y, null);
+
+        if (pointers.up(id, x, y, SystemClock.uptimeMillis()))
+            schedulePointerFlush();
+    }
+
+    // 押されている全ポインタを ACTION_CANCEL で離す（レイがパネルから外れたとき等）
+    public void pointerCancel() {
+        if (!ready && deferred(this::pointerCancel) || webView == null)
+            return;
+        recordInput(FrameRecorder.IN_POINTER_CANCEL, 0, 0, 0, null);
+
+        if (pointers.cancel(SystemClock.uptimeMillis()))
+            schedulePointerFlush();
+    }
+
+    private void schedulePointerFlush() {
+        if (pointerFlushScheduled.compareAndSet(false, true))
+            mainHandler.post(pointerFlushTask);
+    }
+
+    // main looper：貯まったポインタ入力を流す
+    private void flushPointers() {
+        pointerFlushScheduled.set(false);
+        if (webView == null) {
+            pointers.flush(null); // 凍結・破棄済みなら捨てる
+            return;
+        }
+        pointers.flush(webView);
+        markInvalidated(); // ドラッグはほぼスクロール。押した結果の変化はスクロールが止まった次のフレームで全面を描く
     }
 
     // 互換のため残す（Unity側が呼ぶならこれでもOK）
@@ -96,45 +659,37 @@ public class WebViewCpuBridge {
 
     // 端末差が出るので「おまけ」
     public void text(String s) {
-        if (!ready || webView == null)
+        if (!ready && deferred(() -> text(s)) || webView == null)
             return;
 
-        mainHandler.post(() -> {
-            String escaped = s
-                    .replace("\\", "\\\\")
-                    .replace("'", "\\'")
-                    .replace("\n", "\\n")
-                    .replace("\r", "");
-
-            String js = "(function(){"
-                    + "var el=document.activeElement;"
-                    + "if(!el) return;"
-                    + "if('value' in el){"
-                    + "  el.value=(el.value||'')+'" + escaped + "';"
-                    + "  el.dispatchEvent(new Event('input',{bubbles:true}));"
-                    + "  el.dispatchEvent(new Event('change',{bubbles:true}));"
-                    + "}"
-                    + "})();";
-
-            webView.evaluateJavascript(js, null);
-        });
+        enqueueJs(JsCommandQueue.APPEND, s.replace("\r", ""));
     }
 
     // 安定：フォーカス中の input/textarea に値を流し込む（全文同期）
     public void setFocusedInputValue(String value) {
-        if (!ready || webView == null)
+        if (!ready && deferred(() -> setFocusedInputValue(value)) || webView == null)
             return;
 
-        final String quoted = JSONObject.quote(value);
-        final String js = "(function(){"
-                + "var e=document.activeElement;"
-                + "if(e && ('value' in e)){"
-                + "  e.value=" + quoted + ";"
-                + "  e.dispatchEvent(new Event('input',{bubbles:true}));"
-                + "}"
-                + "})();";
+        enqueueJs(JsCommandQueue.SET_VALUE, value);
+    }
+
+    // 差分同期：フォーカス中の input/textarea の [start, start+deleteCount) を text に置き換える（位置は UTF-16）
+    // 送るのは変わった部分だけなので、長い textarea でも編集の大きさぶんしかかからない。カーソルは text の直後
+    public void spliceFocusedInput(int start, int deleteCount, String text) {
+        spliceFocusedInput(start, deleteCount, text, -1);
+    }
+
+    // expectedLength：置き換える前の値の長さ。ページ側の値と違えば何もせず getSpliceRejectCount を増やす
+    // （呼び出し側はそれを見て setFocusedInputValue で全文を送り直す）
+    public void spliceFocusedInput(int start, int deleteCount, String text, int expectedLength) {
+        if (!ready && deferred(() -> spliceFocusedInput(start, deleteCount, text, expectedLength)) || webView == null)
+            return;
+        if (start < 0 || deleteCount < 0 || text == null)
+            return;
 
-        mainHandler.post(() -> webView.evaluateJavascript(js, null));
+        recordInput(FrameRecorder.IN_JS, JsCommandQueue.SPLICE, start, deleteCount, text);
+        jsQueue.addSplice(start, deleteCount, text, expectedLength);
+        afterEnqueueJs();
     }
 
     // -------------------------
@@ -143,235 +698,1269 @@ public class WebViewCpuBridge {
 
     // 1文字/文字列を「カーソル位置に挿入」
     public void insertText(String text) {
-        if (!ready || webView == null)
+        if (!ready && deferred(() -> insertText(text)) || webView == null)
             return;
 
-        final String quoted = JSONObject.quote(text);
-        final String js = "(function(){"
-                + "var e=document.activeElement;"
-                + "if(!e) return 'no_active';"
-                + "var tag=(e.tagName||'').toUpperCase();"
-                + "if(tag!=='INPUT' && tag!=='TEXTAREA' && !e.isContentEditable) return 'not_editable';"
-                + "var v=('value' in e)?(e.value||''):(e.textContent||'');"
-                + "var s=(e.selectionStart!=null)?e.selectionStart:v.length;"
-                + "var t=(e.selectionEnd!=null)?e.selectionEnd:v.length;"
-                + "var ins=" + quoted + ";"
-                + "var nv=v.substring(0,s)+ins+v.substring(t);"
-                + "if('value' in e) e.value=nv; else e.textContent=nv;"
-                + "var p=s+ins.length;"
-                + "if(e.setSelectionRange) e.setSelectionRange(p,p);"
-                + "e.dispatchEvent(new Event('input',{bubbles:true}));"
-                + "return 'ok';"
-                + "})();";
-
-        mainHandler.post(() -> webView.evaluateJavascript(js, null));
+        enqueueJs(JsCommandQueue.INSERT, text);
     }
 
     // Backspace（カーソルの左1文字 or 選択範囲削除）
     public void backspace() {
-        if (!ready || webView == null)
+        if (!ready && deferred(this::backspace) || webView == null)
             return;
 
-        final String js = "(function(){"
-                + "var e=document.activeElement;"
-                + "if(!e) return 'no_active';"
-                + "var tag=(e.tagName||'').toUpperCase();"
-                + "if(tag!=='INPUT' && tag!=='TEXTAREA' && !e.isContentEditable) return 'not_editable';"
-                + "var v=('value' in e)?(e.value||''):(e.textContent||'');"
-                + "var s=(e.selectionStart!=null)?e.selectionStart:v.length;"
-                + "var t=(e.selectionEnd!=null)?e.selectionEnd:v.length;"
-                + "if(s===t && s>0){ s=s-1; }"
-                + "var nv=v.substring(0,s)+v.substring(t);"
-                + "if('value' in e) e.value=nv; else e.textContent=nv;"
-                + "if(e.setSelectionRange) e.setSelectionRange(s,s);"
-                + "e.dispatchEvent(new Event('input',{bubbles:true}));"
-                + "return 'ok';"
-                + "})();";
-
-        mainHandler.post(() -> webView.evaluateJavascript(js, null));
+        enqueueJs(JsCommandQueue.BACKSPACE, null);
     }
 
     // Enter（textareaは改行、inputはsubmit試行）
     public void enter() {
-        if (!ready || webView == null)
+        if (!ready && deferred(this::enter) || webView == null)
             return;
 
-        final String js = "(function(){"
-                + "var e=document.activeElement;"
-                + "if(!e) return 'no_active';"
-                + "var tag=(e.tagName||'').toUpperCase();"
-                + "if(tag==='TEXTAREA'){"
-                + "  var v=e.value||'';"
-                + "  var s=(e.selectionStart!=null)?e.selectionStart:v.length;"
-                + "  var t=(e.selectionEnd!=null)?e.selectionEnd:v.length;"
-                + "  var nv=v.substring(0,s)+'\\n'+v.substring(t);"
-                + "  e.value=nv;"
-                + "  var p=s+1;"
-                + "  e.setSelectionRange(p,p);"
-                + "  e.dispatchEvent(new Event('input',{bubbles:true}));"
-                + "  return 'ok_textarea';"
-                + "}"
-                + "if(e.form){"
-                + "  try{ e.form.requestSubmit(); return 'ok_submit'; }catch(_){"
-                + "    try{ e.form.submit(); return 'ok_submit2'; }catch(__){}"
-                + "  }"
-                + "}"
-                + "e.dispatchEvent(new KeyboardEvent('keydown',{key:'Enter',bubbles:true}));"
-                + "e.dispatchEvent(new KeyboardEvent('keyup',{key:'Enter',bubbles:true}));"
-                + "return 'ok_event';"
-                + "})();";
-
-        mainHandler.post(() -> webView.evaluateJavascript(js, null));
+        enqueueJs(JsCommandQueue.ENTER, null);
+    }
+
+    // 次の main looper の番でまとめて送る（予約済みなら積むだけ）
+    private void enqueueJs(char op, String arg) {
+        recordInput(FrameRecorder.IN_JS, op, 0, 0, arg);
+        jsQueue.add(op, arg);
+        afterEnqueueJs();
+    }
+
+    private void afterEnqueueJs() {
+        metrics.count(CaptureMetrics.JS_QUEUED);
+        if (jsFlushScheduled.compareAndSet(false, true))
+            mainHandler.post(jsFlushTask);
+    }
+
+    // main looper：貯まった命令を1回の evaluateJavascript で流す
+    private void flushJs() {
+        jsFlushScheduled.set(false);
+        String js = jsQueue.drainScript();
+        if (js == null)
+            return;
+        if (webView == null) {
+            metrics.count(CaptureMetrics.JS_DROPPED);
+            return; // 凍結・破棄済みなら捨てる
+        }
+        webView.evaluateJavascript(js, null);
+        metrics.count(CaptureMetrics.JS_EXECUTED);
+        markDamaged();
     }
 
     // フォーカス中要素の情報を JSON で返す（Unityが「今入力中？」判定に使う）
+    // ページ側が focusin/focusout/selectionchange 等で push した最新値をそのまま返す（待ち無し）
+    // 形式：{hasFocus, editable, tag, type, value, selStart, selEnd, rect:{x,y,w,h}}
     public String getFocusedInfoJson() {
-        if (!ready || webView == null)
+        if (!ready)
             return null;
+        return focusJson;
+    }
 
-        final Object lock = new Object();
-        final String[] result = { null };
-        final boolean[] done = { false };
-
-        final String js = "(function(){"
-                + "var e=document.activeElement;"
-                + "if(!e) return JSON.stringify({hasFocus:false});"
-                + "var tag=(e.tagName||'').toLowerCase();"
-                + "var editable=(tag==='input'||tag==='textarea'||e.isContentEditable);"
-                + "var v=('value' in e)?(e.value||''):(e.textContent||'');"
-                + "var s=(e.selectionStart!=null)?e.selectionStart:null;"
-                + "var t=(e.selectionEnd!=null)?e.selectionEnd:null;"
-                + "var r=(e.getBoundingClientRect)?e.getBoundingClientRect():null;"
-                + "return JSON.stringify({"
-                + "hasFocus:true,editable:editable,tag:tag,type:(e.type||null),"
-                + "value:v,selStart:s,selEnd:t,"
-                + "rect:r?{x:r.x,y:r.y,w:r.width,h:r.height}:null"
-                + "});"
-                + "})();";
-
-        mainHandler.post(() -> webView.evaluateJavascript(js, new ValueCallback<String>() {
-            @Override
-            public void onReceiveValue(String value) {
-                // value は JSON文字列が "..." で返ることがある（そのまま返す）
-                result[0] = value;
-                synchronized (lock) {
-                    done[0] = true;
-                    lock.notifyAll();
-                }
-            }
-        }));
+    // push のたびに増える。前回値と同じなら getFocusedInfoJson も変わっていない
+    public long getFocusVersion() {
+        return focusVersion.get();
+    }
 
-        synchronized (lock) {
-            try {
-                if (!done[0])
-                    lock.wait(80);
-            } catch (InterruptedException ignored) {
-            }
-        }
-        return result[0];
+    // ページ側で捨てられた spliceFocusedInput の累計。増えていたら差分の元がずれている
+    public long getSpliceRejectCount() {
+        return spliceRejects.get();
     }
 
     // -------------------------
     // Capture
     // -------------------------
+    // どの capture も待たずに「完成済みの最新フレーム」を返す（1フレーム遅れ）
+    // capture 系は同じスレッド（Unityのメインスレッド）から呼ぶこと
 
     public byte[] captureRgba() {
-        if (!ready || webView == null)
+        if (!ready || !beginCapture())
             return null;
+        return pipeline.captureRgba();
+    }
+
+    // -------------------------
+    // Capture (P0 fix)
+    // -------------------------
+    // 互換用：新フレームが無くても直近のフレームを書き込む
+    // Unity側の配列に直接書き込む（JNI側での毎フレームnewを回避）
+    public boolean captureInto(byte[] outRgba) {
+        if (!ready || !beginCapture())
+            return false;
+        return pipeline.captureInto(outRgba);
+    }
+
+    // 新しいフレームがあるときだけ outRgba に書き込む
+    // 戻り値：フレーム番号（単調増加） / NO_NEW_FRAME / CAPTURE_FAILED
+    public long captureLatestInto(byte[] outRgba) {
+        if (!ready)
+            return CAPTURE_FAILED;
+        if (!beginCapture())
+            return NO_NEW_FRAME;
+        final long t0 = System.nanoTime();
+        final long frameId = pipeline.captureLatestInto(outRgba);
+        if (frameId > 0)
+            captureCostNanos = System.nanoTime() - t0;
+        return frameId;
+    }
+
+    // main looper が描き終えた最新のフレーム番号（0 = まだ無い）
+    public long getLatestFrameId() {
+        return latestFrameId;
+    }
+
+    // -------------------------
+    // Output format
+    // -------------------------
+    // captureInto / captureLatestInto / captureDirtyInto / captureLatestIntoBuffer / captureFoveatedInto の出力形式
+    // 0 = RGBA32, 1 = RGB565, 2 = RGB24, 3 = R8（輝度のみ）。captureRgba は常に RGBA32
+    // 出力配列の大きさは width*height*getOutputBytesPerPixel()。capture と同じスレッドから呼ぶこと
+
+    public boolean setOutputFormat(int format) {
+        if (!OutputFormat.isValid(format) || shared != null)
+            return false; // 共有バッファの大きさ・形式は startSharedFrames の時点で決まる
+        pipeline.setFormat(format);
+        outputFormat = format;
+        markDamaged(); // 新しい形式のフレームを描かせる
+        return true;
+    }
+
+    public int getOutputFormat() {
+        return outputFormat;
+    }
+
+    public int getOutputBytesPerPixel() {
+        return OutputFormat.bytesPerPixel(outputFormat);
+    }
 
-        final Object lock = new Object();
-        final boolean[] done = { false };
+    // Unity の TextureFormat の名前（"RGBA32" / "RGB565" / "RGB24" / "R8"）
+    public String getOutputTextureFormat() {
+        return OutputFormat.textureFormat(outputFormat);
+    }
+
+    // -------------------------
+    // Dynamic resolution
+    // -------------------------
+    // draw（main looper）＋ capture（読み出し・差分・変換）が budgetMs を超え続けたら描く倍率を 1/8 ずつ下げ、
+    // 余裕が続いたら上げる（minScale〜maxScale、0.25〜1）。budgetMs <= 0 は setAdaptiveRange の最短間隔
+    // 出力配列・テクスチャの大きさは width*height のまま。フレームは左上の getFrameWidth() x getFrameHeight() に入り、
+    // 右・下は前の内容が残るので、Unity 側は UV を getRenderScale() 倍に絞って貼る
+    // 入力座標（tap / pointer*）はパネル座標のまま（倍率に関係しない）。foveated の間は倍率を据え置く
+
+    public void setDynamicResolution(boolean enabled, float minScale, float maxScale, int budgetMs) {
+        final int budget = budgetMs > 0 ? budgetMs : adaptiveMinMs;
+        scaler.configure(minScale, maxScale, budget * 1_000_000L);
+        if (!enabled)
+            scaler.reset();
+        dynamicResolution = enabled;
+        markDamaged();
+    }
+
+    // 直近に capture したフレームの倍率（frameWidth / width）
+    public float getRenderScale() {
+        return (float) frameWidth / width;
+    }
 
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+
+    // -------------------------
+    // Off-main raster
+    // -------------------------
+    // true にすると main looper では WebView の表示リストを Picture に記録するだけにし、
+    // ラスタ（Bitmap への描画）と公開は専用スレッド（WebViewCpuRaster）で行う
+    // main looper の占有が記録の分だけになり、その間に積まれた入力・evaluateJavascript が待たされにくい
+    // 記録とラスタは交互（ラスタ中は次の記録をしない）なので、1フレームの遅れは増えない
+    // Picture の再生に対応しない WebView の実装では絵が欠けることがあるので既定は false
+
+    public void setOffMainRaster(boolean enabled) {
         mainHandler.post(() -> {
-            try {
-                webView.draw(canvas);
-            } catch (Exception ignored) {
-            }
-            synchronized (lock) {
-                done[0] = true;
-                lock.notifyAll();
+            if (enabled && rasterThread == null) {
+                rasterThread = new HandlerThread("WebViewCpuRaster");
+                rasterThread.start();
+                rasterHandler = new Handler(rasterThread.getLooper());
             }
+            offMainRaster = enabled;
+            if (!enabled)
+                stopRasterThread();
+            markDamaged();
         });
+    }
 
-        synchronized (lock) {
-            try {
-                if (!done[0])
-                    lock.wait(50);
-            } catch (InterruptedException ignored) {
+    public boolean isOffMainRaster() {
+        return offMainRaster;
+    }
+
+    // main looper：raster スレッドを止める（積まれたラスタは流し切ってから終わる）
+    private void stopRasterThread() {
+        offMainRaster = false;
+        if (rasterThread == null)
+            return;
+        rasterThread.quitSafely();
+        rasterThread = null;
+        rasterHandler = null;
+    }
+
+    // -------------------------
+    // Capture (dirty tiles)
+    // -------------------------
+
+    // 前フレームから変化したタイルだけを outRgba に変換する
+    // outRgba は毎回同じ配列を渡すこと（変化のないタイルは前回の内容のまま残す）
+    // outRects には {x, y, w, h} の矩形を詰める（長さは getDirtyRectCapacity() 以上推奨）
+    // 戻り値：矩形数（0=変化なし） / -1=失敗
+    public int captureDirtyInto(byte[] outRgba, int[] outRects) {
+        if (!ready)
+            return -1;
+        if (!beginCapture())
+            return 0;
+        final long t0 = System.nanoTime();
+        final int n = pipeline.captureDirtyInto(outRgba, outRects);
+        if (n > 0)
+            captureCostNanos = System.nanoTime() - t0;
+        return n;
+    }
+
+    public int getDirtyRectCapacity() {
+        return pipeline.dirtyRectCapacity();
+    }
+
+    public int getDirtyTileSize() {
+        return pipeline.dirtyTileSize();
+    }
+
+    // 縦スクロールだけのフレームは前のフレームをずらして出てきた帯だけ描き・変換する（既定 false）
+    // 固定ヘッダなど、スクロールで動かない要素のあるページでは使わない
+    // captureDirtyInto はそのフレームで全面1枚の矩形を返す（変換は帯だけ、行のコピーは全面）
+    public void setScrollShift(boolean enabled) {
+        scrollShift = enabled;
+        markDamaged();
+    }
+
+    // FramePipeline から見たリング（呼び出し側スレッド）
+    private final class RingSource implements FrameSource {
+        @Override
+        public int width() {
+            return width;
+        }
+
+        @Override
+        public int height() {
+            return height;
+        }
+
+        @Override
+        public boolean acquire() {
+            return acquireLatest();
+        }
+
+        @Override
+        public long frameId() {
+            FrameSlot slot = slots[frontIndex];
+            return slot == null || slot.foveated ? 0 : slot.frameId;
+        }
+
+        // front の内容を読み出す（まだ1枚も無い・foveated なら false）
+        @Override
+        public boolean read(int[] dst) {
+            FrameSlot slot = slots[frontIndex];
+            if (slot == null || slot.frameId == 0 || slot.foveated)
+                return false;
+            final long t = metrics.start();
+            // 縮小フレームは stride width のまま左上に読む（右・下は前の内容のまま）
+            final int bw = slot.bitmap.getWidth(), bh = slot.bitmap.getHeight();
+            slot.bitmap.getPixels(dst, 0, width, 0, 0, bw, bh);
+            metrics.stop(CaptureMetrics.STAGE_READ, t);
+            frameWidth = bw;
+            frameHeight = bh;
+            recordFrame(slot.frameId, dst);
+            return true;
+        }
+
+        // スクロールしたフレームの出てきた行だけ（等倍の全面フレームのときだけ呼ばれる）
+        @Override
+        public boolean readRows(int[] dst, int y, int h) {
+            FrameSlot slot = slots[frontIndex];
+            if (slot == null || slot.frameId == 0 || slot.foveated)
+                return false;
+            final long t = metrics.start();
+            slot.bitmap.getPixels(dst, y * width, width, 0, y, width, h);
+            metrics.stop(CaptureMetrics.STAGE_READ, t);
+            return true;
+        }
+
+        // 記録中は毎フレーム全面を読む（記録するのは read で読んだ全面）
+        @Override
+        public long scrollEpoch() {
+            FrameSlot slot = slots[frontIndex];
+            if (slot == null || slot.foveated || recorder != null)
+                return 0;
+            return slot.scrollEpoch;
+        }
+
+        @Override
+        public int scrollY() {
+            FrameSlot slot = slots[frontIndex];
+            return slot != null ? slot.scrollY : 0;
+        }
+    }
+
+    // -------------------------
+    // Capture (direct ByteBuffer)
+    // -------------------------
+    // Bitmap のメモリ上の並びをそのまま memcpy する（int[] も変換ループも無し）
+    // 出力形式が RGBA32（ARGB_8888）か RGB565（RGB_565）のときだけ使える。RGB24 / R8 は CAPTURE_FAILED
+    //   バイト順：R, G, B, A（Unity の TextureFormat.RGBA32 と同じ）/ RGB565 は Unity の RGB565 と同じ
+    //   アルファ：乗算済み（premultiplied）。getPixels 経由の captureInto 系は非乗算
+    //   Webページはほぼ不透明なので通常は差が出ないが、半透明を合成するなら
+    //   シェーダ側を Blend One OneMinusSrcAlpha にすること
+    public static final boolean BUFFER_PREMULTIPLIED_ALPHA = true;
+
+    // 新しいフレームがあるときだけ dst（direct, 容量 width*height*bpp 以上）に書き込む
+    // dst の position/limit は呼び出し後 0 / width*height*bpp になる。dst は呼び出しの間だけ使い、持ち続けない
+    // 戻り値：フレーム番号 / NO_NEW_FRAME / CAPTURE_FAILED
+    public long captureLatestIntoBuffer(ByteBuffer dst) {
+        if (!ready)
+            return CAPTURE_FAILED;
+        final int format = outputFormat;
+        if (dst == null || !dst.isDirect() || !OutputFormat.isBitmapLayout(format)
+                || dst.capacity() < width * height * OutputFormat.bytesPerPixel(format)) {
+            metrics.count(CaptureMetrics.CAPTURE_FAILED);
+            return CAPTURE_FAILED;
+        }
+        if (!beginCapture())
+            return NO_NEW_FRAME;
+
+        final long t0 = metrics.start();
+        final long tc = System.nanoTime();
+        if (!acquireLatest())
+            return NO_NEW_FRAME;
+        FrameSlot slot = slots[frontIndex];
+        if (slot == null || slot.frameId == 0 || slot.foveated || slot.bitmap.getConfig() != bitmapConfig())
+            return NO_NEW_FRAME; // 形式を切り替える前に描いたフレーム
+
+        final int bw = slot.bitmap.getWidth(), bh = slot.bitmap.getHeight();
+        if (bw == width && bh == height) {
+            dst.clear();
+            slot.bitmap.copyPixelsToBuffer(dst);
+            dst.flip();
+        } else {
+            copyScaledToBuffer(slot.bitmap, dst, OutputFormat.bytesPerPixel(format));
+        }
+        frameWidth = bw;
+        frameHeight = bh;
+        if (recorder != null) {
+            // 記録は ARGB の int[] で取る（記録中だけ）
+            int[] px = pipeline.scratch();
+            slot.bitmap.getPixels(px, 0, width, 0, 0, bw, bh);
+            recordFrame(slot.frameId, px);
+        }
+        metrics.stop(CaptureMetrics.STAGE_READ, t0);
+        metrics.stop(CaptureMetrics.STAGE_CAPTURE, t0);
+        captureCostNanos = System.nanoTime() - tc;
+        return slot.frameId;
+    }
+
+    // 縮小フレーム（詰めたレイアウト）を作業バッファに写してから、dst の左上へ stride width で並べ直す
+    private void copyScaledToBuffer(Bitmap bitmap, ByteBuffer dst, int bpp) {
+        ByteBuffer tmp = scaledScratch;
+        if (tmp == null || tmp.capacity() < width * height * bpp)
+            scaledScratch = tmp = ByteBuffer.allocateDirect(width * height * bpp);
+        tmp.clear();
+        bitmap.copyPixelsToBuffer(tmp);
+        final int row = bitmap.getWidth() * bpp, stride = width * bpp;
+        for (int y = 0; y < bitmap.getHeight(); y++) {
+            tmp.limit(y * row + row);
+            tmp.position(y * row);
+            dst.limit(y * stride + row);
+            dst.position(y * stride);
+            dst.put(tmp);
+        }
+        dst.limit(width * height * bpp);
+        dst.position(0);
+    }
+
+    // -------------------------
+    // Capture (shared frames)
+    // -------------------------
+    // 呼ぶのは1回だけ。以降のフレームはブリッジが自分で変化した範囲だけ書き込み、Unity はメモリを見るだけでよい
+    // （レイアウト・読み方は SharedFrameBuffer）。Unity 側は AndroidJNI.GetDirectBufferAddress でアドレスを取る
+    // 動いている間は capture 系を呼ばないこと・setOutputFormat は false
+    public ByteBuffer startSharedFrames() {
+        synchronized (sharedLock) {
+            if (shared == null) {
+                shared = new SharedFrameBuffer(width, height, outputFormat, pipeline.dirtyRectCapacity());
+                publishThread = new HandlerThread("WebViewCpuPublish");
+                publishThread.start();
+                publishHandler = new Handler(publishThread.getLooper());
+                publishHandler.post(publishTask);
             }
+            return shared.buffer();
+        }
+    }
+
+    // バッファの中身は最後のフレームのまま残る（Unity が読み終えてから捨てる）
+    public void stopSharedFrames() {
+        synchronized (sharedLock) {
+            if (publishThread == null)
+                return;
+            publishHandler = null;
+            publishThread.quitSafely();
+            publishThread = null;
+            shared = null;
+        }
+    }
+
+    // publish スレッド：変化があれば共有バッファへ。間隔は getSuggestedIntervalMs と同じ決め方
+    // 見えていない間は capture しない（Unity が取得を止めるのと同じ。凍結の対象になる）
+    private void publishShared() {
+        final Handler h = publishHandler;
+        final SharedFrameBuffer s = shared;
+        if (h == null || s == null)
+            return;
+        final int n = visible ? captureDirtyInto(s.staging(), s.rects()) : 0;
+        if (n > 0)
+            s.publish(n, frameWidth, frameHeight, pipeline.frameId());
+        h.postDelayed(publishTask, n != 0 ? adaptiveMinMs : getSuggestedIntervalMs());
+    }
+
+    // -------------------------
+    // Capture (foveated)
+    // -------------------------
+
+    // 注視矩形（パネル座標）を等倍、全体を 1/lowDiv で描くモードにする
+    // 矩形はパネル内に切り詰める。位置だけの変更なら Bitmap は取り直さない
+    public void setFoveation(int fx, int fy, int fw, int fh, int lowDiv) {
+        fx = clamp(fx, 0, width - 1);
+        fy = clamp(fy, 0, height - 1);
+        fw = clamp(fw, 1, width - fx);
+        fh = clamp(fh, 1, height - fy);
+        foveaLowDiv = clamp(lowDiv, 1, 16);
+        foveaRect = ((long) fx << 48) | ((long) fy << 32) | ((long) fw << 16) | fh;
+        markDamaged();
+    }
+
+    public void clearFoveation() {
+        foveaRect = -1;
+        markDamaged();
+    }
+
+    // 新しいフレームがあるときだけ 注視領域 と 縮小全体 を書き込む（どちらも出力形式、詰めたレイアウト）
+    // outFocus：fw*fh*bpp 以上、outLow：(width/lowDiv)*(height/lowDiv)*bpp 以上
+    // outMapping：{fx, fy, fw, fh, lowW, lowH, lowDiv}（outLow の1px = パネルの lowDiv px）
+    // 戻り値：フレーム番号 / NO_NEW_FRAME / CAPTURE_FAILED
+    public long captureFoveatedInto(byte[] outFocus, byte[] outLow, int[] outMapping) {
+        if (!ready)
+            return CAPTURE_FAILED;
+        if (outFocus == null || outLow == null || outMapping == null || outMapping.length < 7) {
+            metrics.count(CaptureMetrics.CAPTURE_FAILED);
+            return CAPTURE_FAILED;
         }
+        if (!beginCapture())
+            return NO_NEW_FRAME;
 
-        bitmap.getPixels(pixelBuf, 0, width, 0, 0, width, height);
+        final long t0 = metrics.start();
+        if (!acquireLatest())
+            return NO_NEW_FRAME;
+        FrameSlot slot = slots[frontIndex];
+        if (slot == null || slot.frameId == 0 || !slot.foveated)
+            return NO_NEW_FRAME;
 
-        for (int i = 0; i < pixelBuf.length; i++) {
-            int c = pixelBuf[i]; // ARGB
-            int o = i * 4;
-            rgbaBuf[o] = (byte) ((c >> 16) & 0xFF);
-            rgbaBuf[o + 1] = (byte) ((c >> 8) & 0xFF);
-            rgbaBuf[o + 2] = (byte) (c & 0xFF);
-            rgbaBuf[o + 3] = (byte) ((c >> 24) & 0xFF);
+        final int lw = slot.low.getWidth(), lh = slot.low.getHeight();
+        final int bpp = OutputFormat.bytesPerPixel(pipeline.format());
+        if (outFocus.length < slot.fw * slot.fh * bpp || outLow.length < lw * lh * bpp) {
+            metrics.count(CaptureMetrics.CAPTURE_FAILED);
+            return CAPTURE_FAILED;
         }
-        return rgbaBuf;
+
+        int[] px = pipeline.scratch();
+
+        long t = metrics.start();
+        slot.focus.getPixels(px, 0, slot.fw, 0, 0, slot.fw, slot.fh);
+        metrics.stop(CaptureMetrics.STAGE_READ, t);
+        pipeline.convertPacked(px, outFocus, slot.fw, slot.fh);
+        t = metrics.start();
+        slot.low.getPixels(px, 0, lw, 0, 0, lw, lh);
+        metrics.stop(CaptureMetrics.STAGE_READ, t);
+        pipeline.convertPacked(px, outLow, lw, lh);
+
+        outMapping[0] = slot.fx;
+        outMapping[1] = slot.fy;
+        outMapping[2] = slot.fw;
+        outMapping[3] = slot.fh;
+        outMapping[4] = lw;
+        outMapping[5] = lh;
+        outMapping[6] = slot.lowDiv;
+        metrics.stop(CaptureMetrics.STAGE_CAPTURE, t0);
+        return slot.frameId;
+    }
+
+    private static int clamp(int v, int min, int max) {
+        return v < min ? min : (v > max ? max : v);
     }
 
     // -------------------------
-    // Capture (P0 fix)
+    // Damage / adaptive scheduling
     // -------------------------
-    public boolean captureInto(byte[] outRgba) {
-        if (!ready || webView == null)
+
+    // 前回描いてから invalidate 等があったか（idleRefreshMs を過ぎたら true 扱い）
+    private boolean needsDraw() {
+        if (!damageDriven)
+            return true;
+        if (damageSeq.get() != drawnDamageSeq)
+            return true;
+        long refresh = idleRefreshMs;
+        return refresh > 0 && SystemClock.uptimeMillis() - lastDrawUptime >= refresh;
+    }
+
+    // 読み込み進捗 / 入力 / JS / 設定の変更で呼ばれる（前のフレームをずらして使えない変化）
+    void markDamaged() {
+        contentSeq.incrementAndGet();
+        markInvalidated();
+    }
+
+    // WebView の invalidate / スクロール / ポインタで呼ばれる
+    void markInvalidated() {
+        damageSeq.incrementAndGet();
+        lastDamageUptime = SystemClock.uptimeMillis();
+    }
+
+    // frameId のフレーム以降に新しいフレームか未描画の変化があるか（軽い：JNI 1回分のみ）
+    public boolean isDirtySince(long frameId) {
+        return frameId < latestFrameId || damageSeq.get() != drawnDamageSeq;
+    }
+
+    // false にすると毎回無条件に描き直す（従来動作）
+    public void setDamageDriven(boolean enabled) {
+        damageDriven = enabled;
+    }
+
+    public void setIdleRefreshMs(long ms) {
+        idleRefreshMs = Math.max(0, ms);
+    }
+
+    public void setAdaptiveRange(int minMs, int maxMs) {
+        adaptiveMinMs = Math.max(1, minMs);
+        adaptiveMaxMs = Math.max(adaptiveMinMs, maxMs);
+    }
+
+    // 次の capture までの推奨間隔（ms）
+    // 変化が続いている間は minMs、止まると 250ms ごとに倍にして maxMs まで下げる
+    public int getSuggestedIntervalMs() {
+        final int min = adaptiveMinMs, max = adaptiveMaxMs;
+        if (damageSeq.get() != drawnDamageSeq)
+            return min;
+        long idle = SystemClock.uptimeMillis() - lastDamageUptime;
+        int steps = (int) Math.min(idle / 250, 30);
+        long ms = (long) min << steps;
+        return (int) Math.min(ms, max);
+    }
+
+    // 次のフレームの描画を main looper に依頼する（依頼済み・変化なしなら何もしない）
+    private void requestDraw() {
+        if (claimDraw())
+            mainHandler.post(drawTask);
+    }
+
+    // 描画が要って、まだ依頼していなければ依頼済みにして true（post は呼び出し側）
+    private boolean claimDraw() {
+        if (!needsDraw()) {
+            metrics.count(CaptureMetrics.DRAW_SKIPPED);
             return false;
-        if (outRgba == null || outRgba.length < width * height * 4)
+        }
+        if (!drawRequested.compareAndSet(false, true))
             return false;
+        drawRequestNanos = metrics.start();
+        return true;
+    }
+
+    // main looper：back に描いて published と交換する
+    // off-main raster のときは Picture に記録するだけで、ラスタ・公開は raster スレッドが行う
+    private void drawFrame() {
+        drawRequested.set(false);
+        metrics.stop(CaptureMetrics.STAGE_QUEUE, drawRequestNanos);
+        if (!ready || webView == null)
+            return;
+        if (rasterBusy)
+            return; // 前のフレームをラスタ中。変化は残っているので次の capture でまた依頼される
+        if (holdCachedUntil != 0) {
+            if (SystemClock.uptimeMillis() < holdCachedUntil)
+                return; // キャッシュのフレームを出している間は、前のページの残りを描かない
+            holdCachedUntil = 0;
+        }
 
-        final Object lock = new Object();
-        final boolean[] done = { false };
+        FrameSlot slot = slots[backIndex];
+        if (slot == null)
+            return;
+        // draw 中の invalidate は次フレームで拾えるよう、描く前に控える
+        final long damage = damageSeq.get();
+        lastDrawUptime = SystemClock.uptimeMillis();
+        final long fovea = foveaRect;
+        // Bitmap の用意（manager のプール）は main looper でしか触れないので、どちらのモードでも先にここで済ませる
+        if (fovea < 0)
+            prepareFull(slot);
+        else
+            prepareFoveated(slot, fovea);
 
-        mainHandler.post(() -> {
+        final Handler raster = offMainRaster ? rasterHandler : null;
+        final long t = metrics.start();
+        final long tc = System.nanoTime();
+        if (raster != null) {
+            // WebView の表示リストを Picture に記録するだけ（main looper の占有は記録の分だけ）
             try {
-                webView.draw(canvas);
-            } catch (Exception ignored) {
+                webView.draw(picture.beginRecording(width, height));
+            } catch (Exception e) {
+                metrics.count(CaptureMetrics.DRAW_FAILED);
+                return;
+            } finally {
+                picture.endRecording();
             }
-            synchronized (lock) {
-                done[0] = true;
-                lock.notifyAll();
+            metrics.stop(CaptureMetrics.STAGE_DRAW, t);
+            rasterSlot = slot;
+            rasterDamage = damage;
+            rasterRecordNanos = System.nanoTime() - tc;
+            rasterBusy = true;
+            raster.post(rasterTask);
+            return;
+        }
+
+        try {
+            paint(slot, null);
+        } catch (Exception e) {
+            metrics.count(CaptureMetrics.DRAW_FAILED);
+            return; // 描きかけは公開しない
+        }
+        metrics.stop(CaptureMetrics.STAGE_DRAW, t);
+        publish(slot);
+        drawnDamageSeq = damage;
+        afterPublish(slot, System.nanoTime() - tc);
+    }
+
+    // raster スレッド：記録した Picture を back にラスタして公開する
+    // ring を触る main looper 側（releaseSlots・キャッシュ/スナップショットの公開）とは ringLock で排他
+    private void rasterFrame() {
+        final long t = metrics.start();
+        final long tc = System.nanoTime();
+        try {
+            synchronized (ringLock) {
+                FrameSlot slot = rasterSlot;
+                if (!ready || frozen || slot == null || slots[backIndex] != slot)
+                    return; // 記録してから ring が作り直された・別のフレームが公開された
+                try {
+                    paint(slot, picture);
+                } catch (Exception e) {
+                    metrics.count(CaptureMetrics.DRAW_FAILED);
+                    return;
+                }
+                metrics.stop(CaptureMetrics.STAGE_RASTER, t);
+                publish(slot);
+                drawnDamageSeq = rasterDamage;
+                afterPublish(slot, rasterRecordNanos + System.nanoTime() - tc);
             }
-        });
+        } finally {
+            rasterSlot = null;
+            rasterBusy = false;
+        }
+    }
+
+    private void afterPublish(FrameSlot slot, long drawNanos) {
+        if (slot.shiftFrom != null) {
+            slot.shiftFrom = null;
+            metrics.count(CaptureMetrics.SCROLL_DRAWS);
+            markInvalidated(); // スクロールが止まっていれば次は全面を描く
+        }
+        // 倍率を変えたら次のフレームを新しい大きさで描かせる（foveated の間は据え置き）
+        if (dynamicResolution && !slot.foveated && scaler.update(drawNanos + captureCostNanos))
+            markDamaged();
+    }
+
+    // main looper：全面用の Bitmap を用意する（dynamic resolution の倍率で）
+    private void prepareFull(FrameSlot slot) {
+        final float scale = dynamicResolution ? scaler.scale() : 1f;
+        ensureFullBitmap(slot, ResolutionScaler.scaled(width, scale), ResolutionScaler.scaled(height, scale));
+        if (slot.focus != null) {
+            // モードを切り替えたら使わない側は返す
+            manager.releaseBitmap(slot.focus);
+            manager.releaseBitmap(slot.low);
+            slot.focus = slot.low = null;
+            slot.focusCanvas = slot.lowCanvas = null;
+        }
+        slot.foveated = false;
+        prepareScroll(slot);
+    }
+
+    // main looper：前のフレームからスクロールしただけなら、それをずらして使うよう slot に書く
+    private void prepareScroll(FrameSlot slot) {
+        final int sx = webView.getScrollX(), sy = webView.getScrollY();
+        final long content = contentSeq.get();
+        final boolean full = slot.bitmap.getWidth() == width && slot.bitmap.getHeight() == height;
+        final FrameSlot prev = latestSlot();
+        slot.shiftFrom = null;
+        if (scrollShift && full && scrollRun < SCROLL_RUN_MAX && prev != null && prev != slot
+                && !prev.foveated && prev.contentSeq == content && prev.scrollEpoch != 0
+                && prev.scrollX == sx && prev.scrollY != sy && Math.abs(sy - prev.scrollY) <= height / 2
+                && prev.bitmap.getWidth() == width && prev.bitmap.getHeight() == height
+                && prev.bitmap.getConfig() == slot.bitmap.getConfig()) {
+            slot.shiftFrom = prev.bitmap;
+            slot.shiftDy = sy - prev.scrollY;
+            slot.scrollEpoch = prev.scrollEpoch;
+            scrollRun++;
+        } else {
+            slot.scrollEpoch = full ? ++scrollEpoch : 0;
+            scrollRun = 0;
+        }
+        slot.scrollX = sx;
+        slot.scrollY = sy;
+        slot.contentSeq = content;
+    }
+
+    // スクロールとは無関係に描いた・置いたフレーム（キャッシュ・スナップショット・foveated）
+    private static void clearScroll(FrameSlot slot) {
+        slot.shiftFrom = null;
+        slot.scrollEpoch = 0;
+        slot.contentSeq = 0;
+    }
+
+    // main looper：注視領域と縮小全体の Bitmap を用意する
+    private void prepareFoveated(FrameSlot slot, long fovea) {
+        final int fx = (int) (fovea >>> 48) & 0xFFFF;
+        final int fy = (int) (fovea >>> 32) & 0xFFFF;
+        final int fw = (int) (fovea >>> 16) & 0xFFFF;
+        final int fh = (int) fovea & 0xFFFF;
+        final int div = foveaLowDiv;
+        final int lw = Math.max(1, width / div), lh = Math.max(1, height / div);
+        ensureFoveaBitmaps(slot, fw, fh, lw, lh);
+        if (slot.bitmap != null) {
+            manager.releaseBitmap(slot.bitmap);
+            slot.bitmap = null;
+            slot.canvas = null;
+        }
+        slot.foveated = true;
+        slot.fx = fx;
+        slot.fy = fy;
+        slot.fw = fw;
+        slot.fh = fh;
+        slot.lowDiv = div;
+        clearScroll(slot);
+    }
+
+    // 用意した Bitmap に描く。pic が null なら WebView を直接（main looper）、あれば記録済みの Picture を
+    // 全面：縮小した Canvas に描く（ラスタ面積が scale^2）
+    // foveated：注視領域は平行移動だけ、全体は縮小した Canvas に描く（縮小側はラスタ面積が 1/div^2）
+    private void paint(FrameSlot slot, Picture pic) {
+        if (slot.shiftFrom != null) {
+            paintScrolled(slot, pic);
+            return;
+        }
+        if (!slot.foveated) {
+            final int bw = slot.bitmap.getWidth(), bh = slot.bitmap.getHeight();
+            Canvas c = slot.canvas;
+            int save = c.save();
+            if (bw != width || bh != height)
+                c.scale((float) bw / width, (float) bh / height);
+            render(c, pic);
+            c.restoreToCount(save);
+            return;
+        }
+
+        Canvas c = slot.focusCanvas;
+        int save = c.save();
+        c.translate(-slot.fx, -slot.fy);
+        render(c, pic);
+        c.restoreToCount(save);
+
+        c = slot.lowCanvas;
+        save = c.save();
+        c.scale((float) slot.low.getWidth() / width, (float) slot.low.getHeight() / height);
+        render(c, pic);
+        c.restoreToCount(save);
+    }
+
+    // 前のフレームを縦にずらして置き、出てきた帯だけ描く（下へスクロールなら下端、上へなら上端）
+    private void paintScrolled(FrameSlot slot, Picture pic) {
+        final int dy = slot.shiftDy, eh = Math.abs(dy);
+        final int ey = dy > 0 ? height - eh : 0;
+        Canvas c = slot.canvas;
+        c.drawBitmap(slot.shiftFrom, 0, -dy, SHIFT_PAINT);
+        int save = c.save();
+        c.clipRect(0, ey, width, ey + eh);
+        render(c, pic);
+        c.restoreToCount(save);
+    }
+
+    private void render(Canvas c, Picture pic) {
+        if (pic != null)
+            c.drawPicture(pic);
+        else
+            webView.draw(c);
+    }
+
+    // main looper（off-main raster のときは raster スレッド）：back を新フレームとして公開する
+    private void publish(FrameSlot slot) {
+        slot.frameId = ++producedFrames;
+        backIndex = published.getAndSet(backIndex | FRESH) & SLOT_MASK;
+        latestFrameId = slot.frameId;
+        metrics.count(CaptureMetrics.FRAMES_PRODUCED);
+    }
+
+    // main looper：描き終えたスロットのうち一番新しいもの（無ければ null）
+    private FrameSlot latestSlot() {
+        FrameSlot latest = null;
+        for (int i = 0; i < RING_SIZE; i++) {
+            FrameSlot slot = slots[i];
+            if (slot != null && slot.frameId > 0 && (latest == null || slot.frameId > latest.frameId))
+                latest = slot;
+        }
+        return latest;
+    }
+
+    // -------------------------
+    // Snapshot cache（main looper）
+    // -------------------------
+
+    // 今のページの最新フレームを圧縮してキャッシュに入れる（ここでは画素を写すだけ。圧縮は SnapshotCache の作業スレッド）
+    private void cacheCurrentFrame() {
+        if (currentUrl == null || holdCachedUntil != 0)
+            return; // キャッシュを出している最中の内容は今のページのものではない
+        FrameSlot slot = latestSlot();
+        if (slot == null || slot.foveated || slot.bitmap.getConfig() != Bitmap.Config.ARGB_8888
+                || slot.bitmap.getWidth() != width || slot.bitmap.getHeight() != height)
+            return; // キャッシュは等倍・ARGB_8888 の並びで持つ
+
+        final SnapshotCache snapshots = manager.snapshots();
+        final ByteBuffer raw = snapshots.takeRaw(width * height * 4);
+        slot.bitmap.copyPixelsToBuffer(raw);
+        snapshots.putAsync(SnapshotCache.key(width, height, currentUrl), raw, width, height);
+    }
+
+    // url のフレームがキャッシュにあれば新フレームとして出す
+    private boolean showCachedFrame(String url) {
+        if (foveaRect >= 0)
+            return false; // foveated の読み手には全面フレームを渡せない
+        if (bitmapConfig() != Bitmap.Config.ARGB_8888)
+            return false;
+        final SnapshotCache snapshots = manager.snapshots();
+        ByteBuffer enc = snapshots.get(SnapshotCache.key(width, height, url));
+        if (enc == null)
+            return false;
+
+        final ByteBuffer raw = snapshots.takeRaw(width * height * 4);
+        try {
+            if (!FrameCodec.decode(enc, width, height, raw) || !showRaw(raw))
+                return false;
+        } finally {
+            snapshots.giveRaw(raw);
+        }
+        holdCachedUntil = SystemClock.uptimeMillis() + HOLD_CACHED_MAX_MS;
+        return true;
+    }
+
+    // raw（ARGB_8888 の並び）を back のスロットに写して公開する
+    private boolean showRaw(ByteBuffer raw) {
+        synchronized (ringLock) { // ラスタ中なら公開し終わってから、その次の back に出す
+            FrameSlot slot = slots[backIndex];
+            if (slot == null)
+                return false;
+            ensureFullBitmap(slot, width, height);
+            if (slot.focus != null) {
+                manager.releaseBitmap(slot.focus);
+                manager.releaseBitmap(slot.low);
+                slot.focus = slot.low = null;
+                slot.focusCanvas = slot.lowCanvas = null;
+            }
+            slot.foveated = false;
+            clearScroll(slot);
+            raw.clear();
+            slot.bitmap.copyPixelsFromBuffer(raw);
+            publish(slot);
+        }
+        return true;
+    }
+
+    private void releaseCachedHold() {
+        if (holdCachedUntil == 0)
+            return;
+        holdCachedUntil = 0;
+        markDamaged();
+    }
+
+    // 次の描画を依頼しつつ、新フレームがあれば front に取り込む
+    private boolean acquireLatest() {
+        if (!atlasDriven)
+            requestDraw();
+        if ((published.get() & FRESH) == 0) {
+            metrics.count(CaptureMetrics.NO_NEW_FRAME);
+            return false;
+        }
+        frontIndex = published.getAndSet(frontIndex) & SLOT_MASK;
+        metrics.count(CaptureMetrics.FRAMES_CONSUMED);
+        return true;
+    }
+
+    // -------------------------
+    // Atlas（WebViewAtlas から。呼び出し側スレッド、drawIfRequested だけ main looper）
+    // -------------------------
+
+    void setAtlasDriven(boolean driven) {
+        atlasDriven = driven;
+    }
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return height;
+    }
+
+    // 見えていて描画が要るなら依頼済みにして true（atlas が全パネル分まとめて main looper に流す）
+    boolean requestAtlasDraw() {
+        return ready && visible && beginCapture() && claimDraw();
+    }
+
+    // main looper：atlas の1回の post から
+    void drawIfRequested() {
+        if (drawRequested.get())
+            drawFrame();
+    }
+
+    // 幅 stride の atlas の (x, y) に書く（FramePipeline.captureRegion）
+    // 戻り値：矩形数（0=変化なし） / -1=書いていない（準備前・見えていない・凍結中・失敗）
+    int captureAtlas(byte[] atlas, int stride, int x, int y, int[] rects, int rectOff) {
+        if (!ready || !visible || frozen)
+            return -1;
+        final long t0 = System.nanoTime();
+        final int n = pipeline.captureRegion(atlas, stride, x, y, rects, rectOff);
+        if (n > 0)
+            captureCostNanos = System.nanoTime() - t0;
+        return n;
+    }
+
+    // -------------------------
+    // Resource cache
+    // -------------------------
+    // 対象はページ本体以外の GET で、hosts（カンマ区切り、末尾一致。空 = すべて）と
+    // contentTypes（カンマ区切り、先頭一致。空 = CSS・JS・画像・フォントなど）に当たるもの
+    // dir は全パネルで共有する（null・空 = アプリのキャッシュディレクトリ下）。maxBytes <= 0 で使わない
+    public boolean setResourceCache(String dir, long maxBytes, String hosts, String contentTypes) {
+        if (maxBytes <= 0) {
+            resourceCache = null;
+            return true;
+        }
+        final File d = dir == null || dir.isEmpty()
+                ? new File(activity.getCacheDir(), RESOURCE_CACHE_DIR) : new File(dir);
+        try {
+            ResourceCache cache = manager.resourceCache(d, maxBytes);
+            cache.setRules(hosts, contentTypes);
+            resourceCache = cache;
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG_I, "setResourceCache failed: " + d, e);
+            resourceCache = null;
+            return false;
+        }
+    }
+
+    public String getResourceCacheSummary() {
+        final ResourceCache cache = resourceCache;
+        return cache != null ? cache.summary() : "";
+    }
+
+    private static final String RESOURCE_CACHE_DIR = "xrbrowser-res";
+
+    // WebView のネットワークスレッド。null を返せば WebView が自分で取りに行く
+    private WebResourceResponse interceptRequest(WebResourceRequest request) {
+        final ResourceCache cache = resourceCache;
+        if (cache == null || request.isForMainFrame() || !"GET".equalsIgnoreCase(request.getMethod()))
+            return null;
+        final String url = request.getUrl().toString();
+        if (!cache.accepts(url))
+            return null;
 
-        synchronized (lock) {
+        ResourceCache.Response r = cache.get(url, request.getRequestHeaders());
+        if (r == null) {
+            // Cookie が要りそうなものは WebView に任せる（SameSite やサードパーティ Cookie の設定は WebView しか知らない）
+            if (CookieManager.getInstance().getCookie(url) != null)
+                return null;
             try {
-                if (!done[0])
-                    lock.wait(50);
-            } catch (InterruptedException ignored) {
+                r = cache.fetch(url, request.getRequestHeaders());
+            } catch (IOException e) {
+                return null;
             }
+            if (r == null)
+                return null;
         }
 
-        bitmap.getPixels(pixelBuf, 0, width, 0, 0, width, height);
+        Map<String, String> responseHeaders = new HashMap<>();
+        if (r.allowOrigin != null)
+            responseHeaders.put("Access-Control-Allow-Origin", r.allowOrigin);
+        return new WebResourceResponse(r.mimeType, r.encoding, r.status, r.reason, responseHeaders, r.body);
+    }
+
+    // -------------------------
+    // Recording
+    // -------------------------
+    // 記録するのは int[] を経由する capture（captureLatestInto / captureDirtyInto など）と
+    // captureLatestIntoBuffer のフレーム。foveated は対象外
+    // 書き込みは専用スレッドなので capture は待たない（追いつかないフレームは捨てる）
 
-        // Unity側の配列に直接書き込む（JNI側での毎フレームnewを回避）
-        for (int i = 0; i < pixelBuf.length; i++) {
-            int c = pixelBuf[i]; // ARGB
-            int o = i * 4;
-            outRgba[o] = (byte) ((c >> 16) & 0xFF);
-            outRgba[o + 1] = (byte) ((c >> 8) & 0xFF);
-            outRgba[o + 2] = (byte) (c & 0xFF);
-            outRgba[o + 3] = (byte) ((c >> 24) & 0xFF);
+    // path に新しく記録を始める（記録中なら前のものを閉じる）。失敗したら false
+    public boolean startRecording(String path) {
+        stopRecording();
+        try {
+            recorder = new FrameRecorder(new File(path), width, height);
+        } catch (IOException e) {
+            Log.w(TAG_I, "startRecording failed: " + path, e);
+            return false;
         }
+        lastRecordedFrameId = 0;
         return true;
     }
 
+    // 記録を閉じる。戻り値は記録したフレーム数（記録していなければ 0）
+    public long stopRecording() {
+        FrameRecorder rec = recorder;
+        if (rec == null)
+            return 0;
+        recorder = null;
+        rec.close();
+        Log.i(TAG_I, "recording closed frames=" + rec.recordedFrames()
+                + " dropped=" + rec.droppedFrames() + " bytes=" + rec.writtenBytes());
+        return rec.recordedFrames();
+    }
+
+    // 呼び出し側：同じフレームは1回だけ記録する
+    private void recordFrame(long frameId, int[] px) {
+        FrameRecorder rec = recorder;
+        if (rec == null || frameId == lastRecordedFrameId)
+            return;
+        lastRecordedFrameId = frameId;
+        rec.recordFrame(frameId, px);
+    }
+
+    private void recordInput(int kind, int a, float x, float y, String text) {
+        FrameRecorder rec = recorder;
+        if (rec != null)
+            rec.recordInput(kind, a, x, y, text);
+    }
+
+    // -------------------------
+    // Metrics
+    // -------------------------
+    // getMetricsSnapshot の並び（long、getMetricsLength() 個）：
+    //   [0..11] produced, consumed, noNew, failed, frozen, drawFailed, drawSkipped, jsQueued, jsExec, jsDropped,
+    //           scrollDraws, scrollCaptures
+    //   以降 6 個ずつ stage（queue, draw, read, convert, diff, capture, raster）の {count, sumUs, maxUs, p50Us, p90Us, p99Us}
+    // パーセンタイルは log2 バケットの上限値（実値の 1〜2 倍）
+    // リングなので capture が待つことも破れたフレームを読むこともない（timeout / torn の欄は無い）
+
+    public int getMetricsLength() {
+        return CaptureMetrics.SNAPSHOT_LENGTH;
+    }
+
+    // out は毎回同じ配列を渡してよい（new 無し）。戻り値は書いた個数
+    public int getMetricsSnapshot(long[] out) {
+        if (out == null)
+            return 0;
+        return metrics.snapshot(out);
+    }
+
+    public String getMetricsSummary() {
+        return metrics.summary();
+    }
+
+    public void resetMetrics() {
+        metrics.reset();
+    }
+
+    public void setMetricsEnabled(boolean enabled) {
+        metrics.setEnabled(enabled);
+    }
+
+    // ms ごとに logcat（TAG: WVCPU_IMPORTANT）へ要約を出す。0 で止める
+    public void setMetricsLogIntervalMs(long ms) {
+        metricsLogMs = Math.max(0, ms);
+        mainHandler.post(() -> {
+            mainHandler.removeCallbacks(metricsLogTask);
+            metricsLogScheduled = false;
+            scheduleMetricsLog();
+        });
+    }
+
+    // main looper
+    private void scheduleMetricsLog() {
+        final long ms = metricsLogMs;
+        if (ms <= 0 || metricsLogScheduled || !ready)
+            return;
+        metricsLogScheduled = true;
+        mainHandler.postDelayed(metricsLogTask, ms);
+    }
+
+    // main looper
+    private void logMetrics() {
+        metricsLogScheduled = false;
+        if (!ready)
+            return;
+        Log.i(TAG_I, "bridge " + width + "x" + height + " " + metrics.summary());
+        scheduleMetricsLog();
+    }
+
+    // -------------------------
+    // Freeze / thaw
+    // -------------------------
+
+    // 画面に映っている間は凍結しない（Unity の OnBecameVisible/Invisible から呼ぶ。既定は映っている）
+    // 映っていない間は共有メモリ・アトラスへの出力も止める
+    public void setVisible(boolean v) {
+        visible = v;
+        if (v)
+            lastViewedUptime = SystemClock.uptimeMillis();
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    long lastViewedUptime() {
+        return lastViewedUptime;
+    }
+
+    // capture 共通の入口。凍結中なら復帰を依頼して false
+    private boolean beginCapture() {
+        lastViewedUptime = SystemClock.uptimeMillis();
+        if (!frozen)
+            return true;
+        metrics.count(CaptureMetrics.FROZEN_SKIPS);
+        if (thawRequested.compareAndSet(false, true))
+            mainHandler.post(thawTask);
+        return false;
+    }
+
+    // main looper：manager が見積もりに使う
+    long estimateBytes() {
+        if (frozen)
+            return snapshot != null ? snapshot.getAllocationByteCount() : 0;
+        long bytes = WEBVIEW_COST_BYTES;
+        for (int i = 0; i < RING_SIZE; i++) {
+            FrameSlot slot = slots[i];
+            if (slot == null)
+                continue;
+            bytes += byteCount(slot.bitmap) + byteCount(slot.focus) + byteCount(slot.low);
+        }
+        bytes += pipeline.estimateBytes();
+        final ByteBuffer scaled = scaledScratch;
+        if (scaled != null)
+            bytes += scaled.capacity();
+        return bytes;
+    }
+
+    private static long byteCount(Bitmap b) {
+        return b != null ? b.getAllocationByteCount() : 0;
+    }
+
+    // main looper
+    boolean canFreeze(long now, long idleMs) {
+        return ready && !frozen && !visible && webView != null
+                && now - lastViewedUptime >= idleMs;
+    }
+
+    // main looper：縮小スナップショットと履歴を残して WebView / Bitmap / 作業配列を手放す
+    // 呼び出し側スレッドが idleMs 以上 capture していないときだけ manager から呼ばれる
+    void freeze() {
+        if (frozen || webView == null)
+            return;
+
+        FrameSlot latest = latestSlot();
+        if (latest != null) {
+            snapshot = Bitmap.createBitmap(
+                    Math.max(1, width / SNAPSHOT_DIV), Math.max(1, height / SNAPSHOT_DIV),
+                    Bitmap.Config.RGB_565);
+            new Canvas(snapshot).drawBitmap(latest.foveated ? latest.low : latest.bitmap, null,
+                    new Rect(0, 0, snapshot.getWidth(), snapshot.getHeight()),
+                    new Paint(Paint.FILTER_BITMAP_FLAG));
+        }
+
+        savedState = new Bundle();
+        webView.saveState(savedState);
+        savedUrl = webView.getUrl();
+
+        frozen = true;
+        manager.releaseWebView((TrackedWebView) webView);
+        webView = null;
+        releaseSlots();
+        holdCachedUntil = 0;
+
+        // 呼び出し側スレッドは止まっている前提。使っていても手元の参照で読み切れる
+        pipeline.release();
+        scaledScratch = null;
+    }
+
+    // main looper：WebView と Bitmap を取り直し、スナップショットを先に1フレームとして出す
+    private void thaw() {
+        thawRequested.set(false);
+        if (!frozen || !ready)
+            return;
+
+        attachWebView();
+        if (savedState != null)
+            webView.restoreState(savedState);
+        else if (savedUrl != null)
+            webView.loadUrl(savedUrl);
+        savedState = null;
+        savedUrl = null;
+
+        synchronized (ringLock) { // 凍結前に記録したフレームのラスタとは重ねない
+            allocateSlots();
+            if (snapshot != null) {
+                FrameSlot slot = slots[backIndex];
+                ensureFullBitmap(slot, width, height);
+                slot.canvas.drawBitmap(snapshot, null, new Rect(0, 0, width, height),
+                        new Paint(Paint.FILTER_BITMAP_FLAG));
+                clearScroll(slot);
+                publish(slot);
+                snapshot.recycle();
+                snapshot = null;
+            }
+        }
+
+        frozen = false;
+        markDamaged();
+        manager.enforceBudget();
+    }
+
     // -------------------------
     // Cleanup
     // -------------------------
 
     public void dispose() {
         mainHandler.post(() -> {
+            ready = false;
+            mainHandler.removeCallbacks(metricsLogTask);
+            stopRasterThread();
+            stopSharedFrames();
+            stopRecording();
+            // 参照順（LRU）も残す（索引は小さいのでここで書く）
+            final ResourceCache cache = resourceCache;
+            if (cache != null)
+                cache.flush();
+            manager.unregister(this);
+            // 同じURLのパネルを開き直したときにすぐ出せるように預けておく
+            cacheCurrentFrame();
             if (webView != null) {
-                webView.destroy();
+                manager.releaseWebView((TrackedWebView) webView);
                 webView = null;
             }
-            bitmap = null;
-            canvas = null;
-            ready = false;
+            releaseSlots();
+            if (snapshot != null) {
+                snapshot.recycle();
+                snapshot = null;
+            }
+            savedState = null;
         });
     }
 }